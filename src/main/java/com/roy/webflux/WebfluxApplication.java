@@ -1,20 +1,45 @@
 package com.roy.webflux;
 
+import com.roy.webflux.deferred.BroadcastJob;
+import com.roy.webflux.deferred.DeferredResultRegistry;
+import com.roy.webflux.deferred.ParallelBroadcaster;
+import com.roy.webflux.deferred.ReplayBuffer;
+import com.roy.webflux.deferred.TopicRegistry;
+import com.roy.webflux.executor.ManagedTaskExecutor;
+import com.roy.webflux.executor.RejectionPolicy;
+import com.roy.webflux.stream.StreamBroadcaster;
+import com.roy.webflux.util.MicroBatchTrigger;
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.Queue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
 @EnableAsync
@@ -22,7 +47,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class WebfluxApplication {
 
 	@RestController
-	public static class AsyncSpringController {
+	public static class AsyncSpringController implements DisposableBean {
 		@GetMapping("/sync")
 		public String sync() throws InterruptedException {
 			log.info("Call sync");
@@ -40,6 +65,19 @@ public class WebfluxApplication {
 			};
 		}
 
+		// /sync와 같이 2초 뒤에 응답하지만 2초 동안 어떤 스레드도 점유하지 않는다.
+		// /callable-async는 sleep을 워커 스레드로 옮겼을 뿐이라 요청 수만큼 워커 스레드가 필요하지만
+		// 여기서는 DeferredResult를 반환하고 공유 타이머(SharedTimer)가 2초 뒤에 결과를 넣어준다.
+		// 타이머 스레드 하나가 모든 요청의 응답 시점을 관리하기 때문에 동시 요청이 10,000개라도 스레드 수는 늘어나지 않는다.
+		@GetMapping("/timer-async")
+		public DeferredResult<String> timerAsync() {
+			log.info("Call timer async");
+			DeferredResult<String> dr = new DeferredResult<>();
+			Timeout timeout = SharedTimer.get().newTimeout(t -> dr.setResult("HELLO"), 2, TimeUnit.SECONDS);
+			dr.onCompletion(timeout::cancel);
+			return dr;
+		}
+
 		// DeferredResult를 저장할 수 있는 큐를 생성한다.
 		// /deferred-result API에서는 위에서 만든 큐에 새로운 DeferredResult 객체를 저장한다.
 		// /deferred-result/count API에서는 큐의 사이즈를 반환한다.
@@ -59,17 +97,55 @@ public class WebfluxApplication {
 		// VisualVM을 확인해보면 서블릿 스레드는 하나뿐이며 워커 스레드는 생성되지 않은 것을 확인할 수 있다.
 		// DeferredResult와 NIO를 사용하여 서버의 자원을 최소한으로 사용하면서 최대의 효율을 끌어내는 것이 가능해진다.
 
-		private final AtomicInteger requestCount = new AtomicInteger(0);
-		private final Queue<DeferredResult<String>> results = new ConcurrentLinkedQueue<>();
+		// 처음에는 ConcurrentLinkedQueue를 사용하였지만 대기 요청이 수만 개로 늘어나면 순회하면서 remove를 호출하는 비용이 O(n^2)이 된다.
+		// DeferredResultRegistry는 stripe 단위로 요청을 나누어 보관하며 등록과 제거가 O(1)이다.
+		// 이벤트가 더 이상 발생하지 않으면 대기 중인 요청이 계속 쌓이기 때문에 요청마다 만료 시간을 둔다.
+		// 만료 시간은 timeout 파라미터로 지정하며 지정하지 않으면 deferred.timeout-ms 값을, 최대 deferred.max-timeout-ms 까지 사용한다.
+		// 만료 처리는 요청마다 타이머를 두지 않고 레지스트리가 공유 타이밍 휠(SharedTimer)에 등록하며, 만료되면 503으로 응답하고 레지스트리에서 제거한다.
+		// 서블릿 컨테이너의 비동기 타임아웃은 타이밍 휠보다 조금 늦게 설정하여 만료 처리는 타이밍 휠이 담당하도록 한다.
+		private static final long CONTAINER_TIMEOUT_GRACE_MS = 1000;
+		private static final ResponseEntity<String> TIMEOUT_RESPONSE =
+				ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Timeout");
+
+		@Value("${deferred.timeout-ms:30000}")
+		private long defaultTimeout;
+		@Value("${deferred.max-timeout-ms:300000}")
+		private long maxTimeout;
+
+		// 이벤트를 받고 다시 연결하기 전에 발행된 이벤트는 놓치게 되므로 최근 이벤트를 순서 번호와 함께 ReplayBuffer에 보관한다.
+		// 모든 응답에는 X-Event-Sequence 헤더로 마지막 이벤트의 순서 번호를 담아서 보낸다.
+		// 클라이언트가 lastSeq 파라미터로 마지막으로 받은 순서 번호를 보내면 놓친 이벤트가 있는 경우 대기하지 않고 바로 응답한다.
+		// 놓친 이벤트가 이미 버퍼에서 밀려난 경우에는 X-Event-Truncated 헤더로 알려주어 클라이언트가 전체 데이터를 다시 조회하도록 한다.
+		// 버퍼를 확인한 직후에 이벤트가 발행되는 경우를 대비하여 레지스트리에 등록한 뒤에 한 번 더 버퍼를 확인한다.
+		private static final String SEQUENCE_HEADER = "X-Event-Sequence";
+		private static final String TRUNCATED_HEADER = "X-Event-Truncated";
+
+		private final DeferredResultRegistry<ResponseEntity<String>> results =
+				new DeferredResultRegistry<>(Runtime.getRuntime().availableProcessors() * 4);
+		private final ReplayBuffer<String> events;
+
 		@GetMapping("/deferred-result")
-		public DeferredResult<String> deferredResult() throws InterruptedException {
+		public DeferredResult<ResponseEntity<String>> deferredResult(@RequestParam(required = false) Long timeout,
+																	 @RequestParam(required = false) Long lastSeq) throws InterruptedException {
 			log.info("Call deferred result");
-			DeferredResult<String> dr = new DeferredResult<>();
-			results.add(dr);
-			requestCount.addAndGet(1);
-			if (requestCount.get() == 100) {
-				deferredEvent("Success");
+			long deadline = deadline(timeout);
+			DeferredResult<ResponseEntity<String>> dr = new DeferredResult<>(deadline + CONTAINER_TIMEOUT_GRACE_MS);
+			if (lastSeq != null) {
+				ReplayBuffer.Replay<String> replay = events.since(lastSeq);
+				if (!replay.isEmpty()) {
+					dr.setResult(replayResponse(replay));
+					return dr;
+				}
+			}
+			DeferredResultRegistry.Parked<ResponseEntity<String>> parked = results.register(dr, deadline, TIMEOUT_RESPONSE);
+			if (lastSeq != null) {
+				ReplayBuffer.Replay<String> replay = events.since(lastSeq);
+				if (!replay.isEmpty() && results.remove(parked)) {
+					dr.setResult(replayResponse(replay));
+					return dr;
+				}
 			}
+			batchTrigger.arrived();
 			return dr;
 		}
 
@@ -78,52 +154,196 @@ public class WebfluxApplication {
 			return String.valueOf(results.size());
 		}
 
+		// 대기 중인 요청 전체에 응답하므로 배치 카운터도 함께 초기화한다. 초기화하지 않으면 이미 응답한 요청의 수가 남아서 다음 배치가 일찍 flush된다.
 		@GetMapping("/deferred-result/event")
 		public String deferredEvent(String message) {
-			for (DeferredResult<String> dr : results) {
-				dr.setResult("Hello " + message);
-				results.remove(dr);
-			}
+			ResponseEntity<String> response = publish(message);
+			batchTrigger.reset();
+			results.drain(dr -> dr.setResult(response));
 			return "OK";
 		}
 
+		private ResponseEntity<String> publish(String message) {
+			long sequence = events.append(message);
+			return ResponseEntity.ok()
+					.header(SEQUENCE_HEADER, String.valueOf(sequence))
+					.body("Hello " + message);
+		}
+
+		// 배치 flush는 발행된 이벤트가 아니라 대기 중인 요청을 풀어주는 것이므로 ReplayBuffer에 넣지 않는다.
+		// 버퍼에 넣으면 다시 연결한 클라이언트가 실제로 발행되지 않은 이벤트를 놓친 이벤트로 받게 된다.
+		// 순서 번호는 마지막으로 발행된 이벤트의 번호를 그대로 보내서 다음 요청의 lastSeq로 사용할 수 있게 한다.
+		private ResponseEntity<String> release(String message) {
+			return ResponseEntity.ok()
+					.header(SEQUENCE_HEADER, String.valueOf(events.latest()))
+					.body("Hello " + message);
+		}
+
+		private ResponseEntity<String> replayResponse(ReplayBuffer.Replay<String> replay) {
+			String body = replay.getEvents().stream()
+					.map(event -> "Hello " + event.getValue())
+					.collect(Collectors.joining("\n"));
+			return ResponseEntity.ok()
+					.header(SEQUENCE_HEADER, String.valueOf(replay.getLatest()))
+					.header(TRUNCATED_HEADER, String.valueOf(replay.isTruncated()))
+					.body(body);
+		}
+
+		// 위의 /deferred-result/event는 요청 스레드에서 대기 중인 요청 전체에 차례대로 응답하기 때문에
+		// tomcat 스레드가 하나뿐인 지금의 설정에서는 응답하는 동안 서버 전체가 다른 요청을 처리하지 못한다.
+		// /deferred-result/event/async는 레지스트리의 stripe 단위와 deferred.broadcast.chunk-size개 단위로 작업을 나누어 broadcastExecutor에서 처리하고 작업 정보를 바로 반환한다.
+		// 반환된 id로 /deferred-result/event/jobs/{id}를 호출하면 응답한 요청의 수와 마지막 응답까지 걸린 시간을 확인할 수 있다.
+		private final ParallelBroadcaster<ResponseEntity<String>> broadcaster;
+
+		// 처음에는 100번째 요청이 들어오면 이벤트를 발생시켰지만 카운터가 초기화되지 않아 101번째 요청부터는 계속 대기하였다.
+		// MicroBatchTrigger는 deferred.batch.max-size개의 요청이 쌓이거나 첫 요청이 deferred.batch.max-wait-ms 동안 기다리면
+		// 둘 중 먼저 만족한 조건으로 대기 중인 요청 전체에 응답하고 카운터를 다시 0부터 센다.
+		// 배치 크기를 키우면 한 번에 처리하는 양이 늘어나고, 대기 시간을 줄이면 응답 지연이 줄어든다.
+		// flush된 배치의 크기와 대기 시간 분포는 /deferred-result/stats에서 확인할 수 있다.
+		private final MicroBatchTrigger batchTrigger;
+
+		public AsyncSpringController(@Qualifier("broadcastExecutor") ExecutorService broadcastExecutor,
+									 @Qualifier("streamExecutor") ExecutorService streamExecutor,
+									 @Value("${deferred.batch.max-size:100}") int batchSize,
+									 @Value("${deferred.batch.max-wait-ms:1000}") long batchWait,
+									 @Value("${deferred.replay.capacity:1024}") int replayCapacity,
+									 @Value("${deferred.broadcast.chunk-size:1000}") int broadcastChunkSize,
+									 @Value("${stream.tick-ms:100}") long tickInterval) {
+			this.events = new ReplayBuffer<>(replayCapacity);
+			this.broadcaster = new ParallelBroadcaster<>(broadcastExecutor, broadcastChunkSize, 100);
+			this.batchTrigger = new MicroBatchTrigger(batchSize, batchWait,
+					() -> broadcaster.broadcast(results, release("Success")));
+			this.streams = new StreamBroadcaster<>(streamExecutor);
+			AtomicLong tick = new AtomicLong();
+			streams.schedule(tickInterval, () -> "<p>Stream " + tick.incrementAndGet() + "</p>");
+		}
+
+		@GetMapping("/deferred-result/stats")
+		public Map<String, Object> deferredStats() {
+			Map<String, Object> stats = new LinkedHashMap<>();
+			stats.put("parked", results.size());
+			stats.put("latestSequence", events.latest());
+			stats.put("batch", batchTrigger.snapshot());
+			return stats;
+		}
+
+		@GetMapping("/deferred-result/event/async")
+		public BroadcastJob deferredEventAsync(String message) {
+			batchTrigger.reset();
+			return broadcaster.broadcast(results, publish(message));
+		}
+
+		@GetMapping("/deferred-result/event/jobs/{id}")
+		public ResponseEntity<BroadcastJob> deferredEventJob(@PathVariable long id) {
+			BroadcastJob job = broadcaster.getJob(id);
+			return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+		}
+
+		// 토픽을 지정하여 대기하면 해당 토픽에 발행된 이벤트만 받는다.
+		// 토픽별로 대기자를 따로 보관하기 때문에 발행 비용은 해당 토픽의 구독자 수에만 비례한다.
+		// /deferred-result/count, /deferred-result/event는 경로가 더 구체적이므로 count, event라는 이름의 토픽은 사용할 수 없다.
+		private final TopicRegistry<String> topics = new TopicRegistry<>(4);
+
+		@GetMapping("/deferred-result/{topic}")
+		public DeferredResult<String> topicDeferredResult(@PathVariable String topic,
+														  @RequestParam(required = false) Long timeout) {
+			log.info("Call deferred result, topic: {}", topic);
+			long deadline = deadline(timeout);
+			DeferredResult<String> dr = new DeferredResult<>(deadline + CONTAINER_TIMEOUT_GRACE_MS);
+			topics.register(topic, dr, deadline, TIMEOUT_RESPONSE);
+			return dr;
+		}
+
+		@GetMapping("/deferred-result/{topic}/count")
+		public String topicDeferredCount(@PathVariable String topic) {
+			return String.valueOf(topics.size(topic));
+		}
+
+		@GetMapping("/deferred-result/{topic}/event")
+		public String topicDeferredEvent(@PathVariable String topic, String message) {
+			topics.publish(topic, dr -> dr.setResult("Hello " + message));
+			return "OK";
+		}
+
+		// 0 이하의 timeout은 등록하자마자 만료되어 대기하지 않고 503으로 응답하게 되므로 잘못된 요청으로 보고 400으로 거절한다.
+		private long deadline(Long timeout) {
+			if (timeout != null && timeout <= 0) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "timeout must be positive: " + timeout);
+			}
+			return Math.min(Objects.requireNonNullElse(timeout, defaultTimeout), maxTimeout);
+		}
+
 		// ResponseBodyEmitter, SseEmitter, StreamingResponseBody 세가지가 모두 같은 역할을 한다.
-		// 우리는 이들 중 ResponseBodyEmitter에 대해서 알아본다.
 		// HTTP 요청을 여러 번으로 나누어 전달하는 방식이다.
-		// 아래와 같이 컨트롤러 코드를 작성하고 localhost:8080/emitter 페이지에 접속해보자.
-		// 0.1초 간격으로 지속적으로 데이터가 출력되는 것을 확인할 수 있다.
-		// 복잡하지 않은 스트리밍 방식의 응답코드를 쉽게 만들 수 있다.
+		// localhost:8080/emitter 페이지에 접속하면 0.1초 간격으로 지속적으로 데이터가 출력되는 것을 확인할 수 있다.
+		// 처음에는 요청마다 Executors.newSingleThreadExecutor()로 스레드를 만들고 send와 Thread.sleep(100)을 반복하였다.
+		// 이 방식은 스트리밍 클라이언트 하나가 스레드 하나를 점유하기 때문에 클라이언트가 1,000개라면 스레드도 1,000개가 필요하다.
+		// 지금은 StreamBroadcaster가 공유 타이머로 stream.tick-ms마다 tick을 만들고
+		// stream.writer-threads개의 스레드가 등록된 모든 클라이언트에게 나누어 보낸다.
+		// 느린 클라이언트에게는 밀린 값을 모두 보내지 않고 가장 최근 값만 보낸다.
+		// 연결이 끊어지거나 stream.timeout-ms가 지나면 브로드캐스터에서 제거되며 /emitter/stats에서 상태를 확인할 수 있다.
+		private final StreamBroadcaster<String> streams;
 
+		@Value("${stream.timeout-ms:60000}")
+		private long streamTimeout;
+
+		@GetMapping("/emitter")
+		public ResponseBodyEmitter emitter() {
+			return streams.register(new ResponseBodyEmitter(streamTimeout));
+		}
+
+		@GetMapping("/emitter/sse")
+		public SseEmitter sseEmitter() {
+			return streams.register(new SseEmitter(streamTimeout));
+		}
+
+		@GetMapping("/emitter/stats")
+		public Map<String, Object> emitterStats() {
+			return streams.snapshot();
+		}
+
+		// 토픽 정리 작업과 스트림 tick은 공유 타이머에 계속 다시 등록되므로 컨트롤러가 종료될 때 함께 중단한다.
+		@Override
+		public void destroy() {
+			topics.close();
+			streams.stop();
+		}
 
 		// 지금까지 자바와 스프링 비동기 기술의 기본이 되는 기술들에 대해서 알아보았다.
 		// 기능적인 부분뿐만 아니라 VisualVM을 통한 리소스 사용량까지 확인해보았다.
-//		@GetMapping("/emitter")
-//		public ResponseBodyEmitter emitter() {
-//			ResponseBodyEmitter emitter = new ResponseBodyEmitter();
-//			Executors.newSingleThreadExecutor().submit(() -> {
-//				try {
-//					for (int i = 1; i <= 50; i++) {
-//						emitter.send("<p>Stream " + i + "</p>");
-//						Thread.sleep(100);
-//					}
-//				} catch (Exception e) {}
-//			});
-//			return emitter;
-//		}
 	}
 
+	// DeferredResult, Callable, ResponseBodyEmitter를 반환하는 컨트롤러이므로 서블릿(스프링 MVC) 스택으로 실행한다. (application.yml의 spring.main.web-application-type)
 	public static void main(String[] args) {
 		SpringApplication.run(WebfluxApplication.class, args);
 	}
 
+	// 큐의 크기를 지정하지 않으면 무제한 큐가 사용되어 처리량을 넘어서는 요청이 거절되지 않고 계속 쌓인다.
+	// 큐가 가득 차면 최대 스레드 수까지 늘리고 그래도 처리할 수 없으면 executor.rejection-policy에 따라 거절한다.
+	// 상태는 /executors에서 확인할 수 있다.
 	@Bean
-	protected ThreadPoolTaskExecutor myExecutors() throws InterruptedException {
-		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
-		taskExecutor.setCorePoolSize(100);
-//		taskExecutor.setCorePoolSize(100);
-//		taskExecutor.setMaxPoolSize(20);
-//		taskExecutor.setQueueCapacity(50);
+	protected ManagedTaskExecutor myExecutors(@Value("${executor.core-size:100}") int coreSize,
+											  @Value("${executor.max-size:200}") int maxSize,
+											  @Value("${executor.queue-capacity:1000}") int queueCapacity,
+											  @Value("${executor.rejection-policy:abort}") String rejectionPolicy) {
+		ManagedTaskExecutor taskExecutor = new ManagedTaskExecutor();
+		taskExecutor.setCorePoolSize(coreSize);
+		taskExecutor.setMaxPoolSize(maxSize);
+		taskExecutor.setQueueCapacity(queueCapacity);
+		taskExecutor.setRejectionPolicy(RejectionPolicy.valueOf(rejectionPolicy.toUpperCase()));
 		taskExecutor.setThreadNamePrefix("my-thread-");
 		return taskExecutor;
 	}
+
+	// @Async의 기본 executor를 찾는 과정에 영향을 주지 않도록 TaskExecutor가 아닌 ExecutorService로 등록한다.
+	@Bean(destroyMethod = "shutdown")
+	protected ExecutorService broadcastExecutor(@Value("${deferred.broadcast.threads:4}") int threads) {
+		return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("broadcast-"));
+	}
+
+	// 스트리밍 클라이언트에게 데이터를 보내는 writer 스레드다. 클라이언트 수와 관계없이 스레드 수는 고정된다.
+	@Bean(destroyMethod = "shutdown")
+	protected ExecutorService streamExecutor(@Value("${stream.writer-threads:2}") int threads) {
+		return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("stream-"));
+	}
 }
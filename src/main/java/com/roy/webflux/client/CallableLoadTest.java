@@ -1,8 +1,10 @@
 package com.roy.webflux.client;
 
+import com.roy.webflux.util.Histogram;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.util.StopWatch;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.concurrent.ExecutorService;
@@ -41,35 +43,66 @@ import java.util.concurrent.atomic.AtomicInteger;
 // 클라이언트의 요청이 10개가 들어왔다고 가정하면 10개의 요청을 DeferredResult에 저장하고 있다가 한 번에 혹은 하나씩 결과를 적어줄 수 있다.
 // 즉, 이벤트 또는 또 다른 클라이언트의 요청에 의해서 기존에 지연되어 있는 HTTP 응답을 나중에 써줄 수 있게 해주는 기능이다.
 
+// async.mode에 따른 차이도 같은 시나리오로 비교한다. 인자로 요청 수와 클라이언트 스레드 수를 지정할 수 있다. 예) CallableLoadTest 10000 1000
+// 서버를 --async.mode=pool과 (Java 21에서) --async.mode=virtual로 한 번씩 실행하고 같은 인자로 호출한다.
+// pool 모드에서는 myExecutors의 스레드 수와 큐의 크기에 묶여서 처리되고 큐를 넘어서는 요청은 503으로 거절되어 errors로 집계된다.
+// virtual 모드에서는 Callable마다 가상 스레드가 할당되므로 클라이언트 스레드 수만큼의 요청이 함께 처리되어야 한다.
+// 시작 전에 POST /runtime/reset으로 서버의 최댓값을 초기화하고 끝난 뒤에 /runtime으로 테스트 동안의 최대 스레드 수를 조회한다.
+// 처리량(요청/초), 응답 시간의 분포, 서버의 최대 스레드 수를 두 모드에서 비교해본다.
+
 @Slf4j
 @EnableAsync
 public class CallableLoadTest {
+    private static final String BASE_URL = "http://localhost:8080";
     private static final AtomicInteger sequence = new AtomicInteger(0);
+    private static final AtomicInteger errors = new AtomicInteger(0);
 
     public static void main(String[] args) throws InterruptedException {
-        ExecutorService es = Executors.newFixedThreadPool(1000);
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        ExecutorService es = Executors.newFixedThreadPool(threads);
         RestTemplate rt = new RestTemplate();
         // String url = "http://localhost:8080/sync";
-        String url = "http://localhost:8080/callable-async";
+        String url = BASE_URL + "/callable-async";
+        Histogram latency = new Histogram();
+        runtime(rt, true);
 
         StopWatch main = new StopWatch();
         main.start();
 
-        for (int i = 0; i < 100; i++) {
+        for (int i = 0; i < requests; i++) {
             es.execute(() -> {
                 int index = sequence.addAndGet(1);
                 log.info("Thread {}", index);
                 StopWatch sw = new StopWatch();
                 sw.start();
-                rt.getForObject(url, String.class);
+                try {
+                    rt.getForObject(url, String.class);
+                } catch (RestClientException e) {
+                    errors.incrementAndGet();
+                }
                 sw.stop();
+                latency.record(sw.getTotalTimeMillis());
                 log.info("Elapsed: {}, {}", index, sw.getTotalTimeSeconds());
             });
         }
         es.shutdown();
-        es.awaitTermination(100, TimeUnit.SECONDS);
+        es.awaitTermination(requests, TimeUnit.SECONDS);
         main.stop();
         log.info("Total: {}", main.getTotalTimeSeconds());
+        log.info("Requests: {}, errors: {}, throughput: {}/s", requests, errors.get(), (long) (requests / main.getTotalTimeSeconds()));
+        log.info("Latency(ms): {}", latency.snapshot());
+        log.info("Runtime: {}", runtime(rt, false));
+    }
+
+    private static String runtime(RestTemplate rt, boolean reset) {
+        try {
+            return reset
+                    ? rt.postForObject(BASE_URL + "/runtime/reset", null, String.class)
+                    : rt.getForObject(BASE_URL + "/runtime", String.class);
+        } catch (RestClientException e) {
+            return "unavailable: " + e.getMessage();
+        }
     }
 
 }
@@ -0,0 +1,85 @@
+package com.roy.webflux.client;
+
+import com.roy.webflux.util.Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 2초 뒤에 응답하는 네 가지 엔드포인트에 동시 요청 10,000개를 보내고 서버의 스레드 수와 힙 사용량을 비교한다.
+// /sync: 요청 스레드가 2초 동안 블로킹된다.
+// /callable-async: 요청 스레드는 바로 반납되지만 워커 스레드가 2초 동안 블로킹된다.
+// /deferred-result: 이벤트가 발생할 때까지 어떤 스레드도 점유하지 않는다. (MicroBatchTrigger가 100개 또는 1초마다 응답한다)
+// /timer-async: 어떤 스레드도 점유하지 않고 공유 타이머가 2초 뒤에 응답한다.
+// 각 엔드포인트를 호출하기 전에 POST /runtime/reset으로 최댓값을 초기화하고, 끝난 뒤에 /runtime으로 테스트 동안의 최대 스레드 수와 힙 사용량을 조회한다.
+// 서버는 톰캣의 최대 연결 수를 늘려서 실행한다. (--server.tomcat.max-connections=20000 --server.tomcat.accept-count=10000)
+// 톰캣 스레드가 1개인 기본 설정에서 /sync는 2초에 하나씩만 처리되므로 대부분의 요청이 타임아웃된다. 이 역시 비교 결과의 일부다.
+// 모든 엔드포인트를 호출한 뒤에 엔드포인트별 총 소요 시간, 에러 수, p50/p99 응답 시간, 최대 스레드 수와 힙 사용량을 한 줄씩 모아서 출력한다.
+@Slf4j
+public class EndpointComparisonLoadTest {
+    private static final String BASE_URL = "http://localhost:8080";
+    private static final String[] ENDPOINTS = {"/sync", "/callable-async", "/deferred-result", "/timer-async"};
+
+    public static void main(String[] args) throws InterruptedException {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String[] endpoints = args.length > 1 ? args[1].split(",") : ENDPOINTS;
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        Map<String, String> summary = new LinkedHashMap<>();
+
+        for (String endpoint : endpoints) {
+            send(client, "POST", "/runtime/reset");
+            AtomicInteger errors = new AtomicInteger(0);
+            Histogram latency = new Histogram();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(BASE_URL + endpoint))
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+
+            long start = System.nanoTime();
+            CompletableFuture<?>[] futures = new CompletableFuture[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                long sent = System.nanoTime();
+                futures[i] = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                        .whenComplete((response, ex) -> {
+                            latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent));
+                            if (ex != null || response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        });
+            }
+            CompletableFuture.allOf(futures).exceptionally(ex -> null).join();
+            long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            String runtime = send(client, "GET", "/runtime");
+            log.info("{} total: {}ms, errors: {}, latency(ms): {}", endpoint, total, errors.get(), latency.snapshot());
+            log.info("{} runtime: {}", endpoint, runtime);
+            summary.put(endpoint, String.format("total: %dms, errors: %d, p50: %dms, p99: %dms, runtime: %s",
+                    total, errors.get(), latency.percentile(0.5), latency.percentile(0.99), runtime));
+            TimeUnit.SECONDS.sleep(5);
+        }
+        log.info("Concurrency: {}", concurrency);
+        summary.forEach((endpoint, result) -> log.info("{} {}", endpoint, result));
+    }
+
+    private static String send(HttpClient client, String method, String path) throws InterruptedException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(BASE_URL + path))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+            return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        } catch (IOException e) {
+            return "unavailable: " + e.getMessage();
+        }
+    }
+}
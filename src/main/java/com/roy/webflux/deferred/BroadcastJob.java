@@ -0,0 +1,76 @@
+package com.roy.webflux.deferred;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// ParallelBroadcaster가 실행하는 하나의 브로드캐스트 작업이다.
+// 청크 단위로 나누어 여러 스레드에서 처리되기 때문에 진행 상황은 카운터로만 기록하며 락을 사용하지 않는다.
+// 처음에는 stripe의 수만큼 청크가 있고, stripe를 비우면서 chunkSize개를 넘는 요청은 청크를 추가하여 나누어 처리한다.
+// completed는 응답을 보낸 요청의 수, skipped는 이미 타임아웃 등으로 응답이 끝나 있던 요청의 수다.
+// elapsedMillis는 브로드캐스트를 시작한 시점부터 마지막 요청에 응답할 때까지 걸린 시간이다.
+public class BroadcastJob {
+    private final long id;
+    private final AtomicInteger chunks;
+    private final long startedAt = System.nanoTime();
+    private final AtomicInteger remainingChunks;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private volatile long finishedAt;
+    private volatile boolean done;
+
+    BroadcastJob(long id, int chunks) {
+        this.id = id;
+        this.chunks = new AtomicInteger(chunks);
+        this.remainingChunks = new AtomicInteger(chunks);
+    }
+
+    void record(boolean resultSet) {
+        if (resultSet) {
+            completed.increment();
+        } else {
+            skipped.increment();
+        }
+    }
+
+    void chunkAdded() {
+        chunks.incrementAndGet();
+        remainingChunks.incrementAndGet();
+    }
+
+    void chunkDone() {
+        if (remainingChunks.decrementAndGet() == 0) {
+            finishedAt = System.nanoTime();
+            done = true;
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getChunks() {
+        return chunks.get();
+    }
+
+    public int getRemainingChunks() {
+        return remainingChunks.get();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getElapsedMillis() {
+        long end = done ? finishedAt : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startedAt);
+    }
+}
@@ -0,0 +1,137 @@
+package com.roy.webflux.deferred;
+
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// 대기 중인 DeferredResult를 여러 개의 stripe로 나누어 보관하는 레지스트리다.
+// ConcurrentLinkedQueue 하나에 모든 요청을 넣으면 생산자와 소비자가 같은 head, tail을 두고 경쟁하게 되고
+// 큐를 순회하면서 remove(dr)를 호출하면 매번 큐를 앞에서부터 탐색하기 때문에 전체 비용이 O(n^2)이 된다.
+// 레지스트리는 요청을 등록할 때 stripe를 무작위로 고르고 각 stripe는 ConcurrentHashMap 기반의 Set을 사용한다.
+// 등록과 제거는 모두 O(1)이며 서로 다른 stripe에 접근하는 스레드끼리는 경쟁하지 않는다.
+// 요청이 타임아웃되거나 완료되면 onCompletion 콜백에서 스스로 레지스트리에서 제거된다.
+// 타임아웃을 지정하여 등록하면 SharedTimer에 만료 작업이 등록되고, 만료되면 timeoutResult로 응답한 뒤 레지스트리에서 제거된다.
+// 반대로 만료 전에 drain되거나 제거되면 등록된 만료 작업도 함께 취소된다.
+// 주의할 점은 DeferredResult는 onCompletion 콜백을 하나만 가질 수 있으므로 등록된 이후에는 레지스트리가 콜백을 소유한다는 점이다.
+public class DeferredResultRegistry<T> {
+    private final Set<Parked<T>>[] stripes;
+    private final int mask;
+    private final Timer timer;
+
+    public DeferredResultRegistry(int stripeCount) {
+        this(stripeCount, SharedTimer.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    public DeferredResultRegistry(int stripeCount, Timer timer) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new Set[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.mask = size - 1;
+        this.timer = timer;
+    }
+
+    public Parked<T> register(DeferredResult<T> result) {
+        Parked<T> parked = new Parked<>(result, ThreadLocalRandom.current().nextInt() & mask);
+        stripes[parked.stripe].add(parked);
+        result.onCompletion(() -> remove(parked));
+        return parked;
+    }
+
+    public Parked<T> register(DeferredResult<T> result, long timeoutMillis, Object timeoutResult) {
+        Parked<T> parked = register(result);
+        parked.timeout = timer.newTimeout(timeout -> {
+            if (remove(parked)) {
+                result.setErrorResult(timeoutResult);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return parked;
+    }
+
+    public boolean remove(Parked<T> parked) {
+        if (stripes[parked.stripe].remove(parked)) {
+            parked.cancelTimeout();
+            return true;
+        }
+        return false;
+    }
+
+    // 모든 stripe를 순서대로 비우면서 꺼낸 DeferredResult에 action을 적용한다.
+    public int drain(Consumer<DeferredResult<T>> action) {
+        int drained = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            drained += drainStripe(i, action);
+        }
+        return drained;
+    }
+
+    // 하나의 stripe만 비운다. remove에 성공한 스레드만 action을 호출하기 때문에
+    // 여러 스레드가 동시에 같은 stripe를 비우더라도 하나의 요청은 정확히 한 번만 처리된다.
+    public int drainStripe(int index, Consumer<DeferredResult<T>> action) {
+        Set<Parked<T>> stripe = stripes[index];
+        int drained = 0;
+        for (Parked<T> parked : stripe) {
+            if (stripe.remove(parked)) {
+                parked.cancelTimeout();
+                action.accept(parked.result);
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Set<Parked<T>> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Set<Parked<T>> stripe : stripes) {
+            if (!stripe.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class Parked<T> {
+        private final DeferredResult<T> result;
+        private final int stripe;
+        private volatile Timeout timeout;
+
+        private Parked(DeferredResult<T> result, int stripe) {
+            this.result = result;
+            this.stripe = stripe;
+        }
+
+        public DeferredResult<T> getResult() {
+            return result;
+        }
+
+        private void cancelTimeout() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.roy.webflux.deferred;
+
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 대기 중인 DeferredResult 전체에 응답하는 작업을 여러 스레드로 나누어 실행한다.
+// 요청 스레드에서 10만 개의 요청에 차례대로 응답하면 tomcat 스레드가 하나뿐인 환경에서는 그 동안 서버 전체가 멈춘다.
+// ParallelBroadcaster는 레지스트리의 stripe마다 executor에 작업을 제출한 뒤 바로 반환한다.
+// stripe 작업은 stripe를 비우면서 꺼낸 요청을 chunkSize개씩 모아서 executor에 다시 나누어 제출하고, 남은 요청에는 직접 응답한다.
+// 요청이 일부 stripe에 몰리더라도 한 스레드가 chunkSize개보다 많은 요청에 연달아 응답하지 않는다.
+// 호출한 쪽은 반환된 BroadcastJob의 id로 진행 상황을 조회할 수 있으며 최근 maxJobs개의 작업만 보관한다.
+public class ParallelBroadcaster<T> {
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxJobs;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<Long, BroadcastJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<Long> history = new ConcurrentLinkedQueue<>();
+
+    public ParallelBroadcaster(Executor executor, int chunkSize, int maxJobs) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxJobs = maxJobs;
+    }
+
+    public BroadcastJob broadcast(DeferredResultRegistry<T> registry, T result) {
+        BroadcastJob job = new BroadcastJob(sequence.incrementAndGet(), registry.stripeCount());
+        remember(job);
+        for (int i = 0; i < registry.stripeCount(); i++) {
+            int stripe = i;
+            executor.execute(() -> {
+                List<DeferredResult<T>> chunk = new ArrayList<>();
+                try {
+                    registry.drainStripe(stripe, (DeferredResult<T> dr) -> {
+                        chunk.add(dr);
+                        if (chunk.size() == chunkSize) {
+                            submit(job, new ArrayList<>(chunk), result);
+                            chunk.clear();
+                        }
+                    });
+                    complete(job, chunk, result);
+                } finally {
+                    job.chunkDone();
+                }
+            });
+        }
+        return job;
+    }
+
+    // stripe 작업이 끝나기 전에 청크를 추가하므로 모든 청크가 끝나기 전에 작업이 완료된 것으로 보이지 않는다.
+    private void submit(BroadcastJob job, List<DeferredResult<T>> chunk, T result) {
+        job.chunkAdded();
+        executor.execute(() -> {
+            try {
+                complete(job, chunk, result);
+            } finally {
+                job.chunkDone();
+            }
+        });
+    }
+
+    private void complete(BroadcastJob job, List<DeferredResult<T>> chunk, T result) {
+        for (DeferredResult<T> dr : chunk) {
+            job.record(dr.setResult(result));
+        }
+    }
+
+    public BroadcastJob getJob(long id) {
+        return jobs.get(id);
+    }
+
+    private void remember(BroadcastJob job) {
+        jobs.put(job.getId(), job);
+        history.add(job.getId());
+        while (history.size() > maxJobs) {
+            Long oldest = history.poll();
+            if (oldest != null) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
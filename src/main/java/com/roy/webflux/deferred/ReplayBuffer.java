@@ -0,0 +1,109 @@
+package com.roy.webflux.deferred;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 최근에 발행된 이벤트를 순서 번호와 함께 보관하는 고정 크기의 링 버퍼다.
+// 이벤트를 받은 뒤 다시 연결하기 전까지 발행된 이벤트를 놓친 클라이언트는 마지막으로 받은 순서 번호를 보내면 놓친 이벤트를 바로 받을 수 있다.
+// 버퍼의 크기는 클라이언트의 수와 관계없이 capacity로 고정되며 오래된 이벤트부터 덮어쓴다.
+// 이벤트 발행은 드물기 때문에 append만 synchronized로 처리하고, 많은 클라이언트가 동시에 호출하는 since는 락 없이 읽는다.
+// 요청한 순서 번호가 이미 덮어써진 경우에는 남아있는 이벤트만 반환하고 truncated로 표시하여 클라이언트가 전체 데이터를 다시 조회하도록 한다.
+public class ReplayBuffer<T> {
+    private final AtomicReferenceArray<Event<T>> slots;
+    private final int capacity;
+    private volatile long latest;
+
+    public ReplayBuffer(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public synchronized long append(T value) {
+        long sequence = latest + 1;
+        slots.set(index(sequence), new Event<>(sequence, value));
+        latest = sequence;
+        return sequence;
+    }
+
+    public long latest() {
+        return latest;
+    }
+
+    public Replay<T> since(long lastSequence) {
+        long last = latest;
+        if (lastSequence == last) {
+            return new Replay<>(Collections.emptyList(), false, last);
+        }
+        // 서버가 재시작되어 클라이언트가 알고 있는 순서 번호가 더 큰 경우도 놓친 이벤트를 알 수 없으므로 truncated로 처리한다.
+        boolean truncated = lastSequence > last;
+        long from = truncated ? 1 : lastSequence + 1;
+        long oldest = Math.max(1, last - capacity + 1);
+        if (from < oldest) {
+            truncated = true;
+            from = oldest;
+        }
+        List<Event<T>> events = new ArrayList<>((int) (last - from + 1));
+        for (long sequence = from; sequence <= last; sequence++) {
+            Event<T> event = slots.get(index(sequence));
+            if (event == null || event.sequence != sequence) {
+                truncated = true;
+                continue;
+            }
+            events.add(event);
+        }
+        return new Replay<>(events, truncated, last);
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    public static final class Event<T> {
+        private final long sequence;
+        private final T value;
+
+        private Event(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    public static final class Replay<T> {
+        private final List<Event<T>> events;
+        private final boolean truncated;
+        private final long latest;
+
+        private Replay(List<Event<T>> events, boolean truncated, long latest) {
+            this.events = events;
+            this.truncated = truncated;
+            this.latest = latest;
+        }
+
+        public List<Event<T>> getEvents() {
+            return events;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public long getLatest() {
+            return latest;
+        }
+
+        // 클라이언트에게 바로 응답해야 하는지 여부다. 놓친 이벤트가 없고 truncated도 아니라면 새로운 이벤트를 기다려야 한다.
+        public boolean isEmpty() {
+            return events.isEmpty() && !truncated;
+        }
+    }
+}
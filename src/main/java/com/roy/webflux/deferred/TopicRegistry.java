@@ -0,0 +1,89 @@
+package com.roy.webflux.deferred;
+
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// 토픽별로 대기 중인 DeferredResult를 보관하는 인덱스다.
+// 토픽마다 별도의 DeferredResultRegistry를 두기 때문에 하나의 토픽에 이벤트를 발행하면 해당 토픽의 대기자만 꺼내서 처리한다.
+// 발행 비용은 전체 대기 요청의 수가 아니라 해당 토픽을 구독하는 요청의 수에 비례한다.
+// 토픽 레지스트리의 생성과 삭제는 ConcurrentHashMap의 compute 안에서만 일어나기 때문에
+// 비어있는 레지스트리를 삭제하는 도중에 새로운 요청이 등록되어 유실되는 일은 없다.
+// 발행 없이 타임아웃으로만 비워진 토픽은 주기적으로 정리하여 토픽 수만큼 메모리가 늘어나지 않도록 한다.
+// 정리 작업은 타이머에 계속 다시 등록되어 레지스트리를 붙잡고 있으므로 더 이상 사용하지 않으면 close로 중단한다.
+public class TopicRegistry<T> {
+    private static final long SWEEP_INTERVAL_SECONDS = 10;
+
+    private final ConcurrentMap<String, DeferredResultRegistry<T>> topics = new ConcurrentHashMap<>();
+    private final int stripesPerTopic;
+    private final Timer timer;
+    private volatile Timeout sweeper;
+
+    public TopicRegistry(int stripesPerTopic) {
+        this(stripesPerTopic, SharedTimer.get());
+    }
+
+    public TopicRegistry(int stripesPerTopic, Timer timer) {
+        this.stripesPerTopic = stripesPerTopic;
+        this.timer = timer;
+        this.sweeper = timer.newTimeout(this::sweep, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public DeferredResultRegistry.Parked<T> register(String topic, DeferredResult<T> result,
+                                                     long timeoutMillis, Object timeoutResult) {
+        AtomicReference<DeferredResultRegistry.Parked<T>> parked = new AtomicReference<>();
+        topics.compute(topic, (key, waiters) -> {
+            DeferredResultRegistry<T> registry = waiters != null ? waiters : new DeferredResultRegistry<>(stripesPerTopic, timer);
+            parked.set(registry.register(result, timeoutMillis, timeoutResult));
+            return registry;
+        });
+        return parked.get();
+    }
+
+    public int publish(String topic, Consumer<DeferredResult<T>> action) {
+        DeferredResultRegistry<T> waiters = topics.get(topic);
+        if (waiters == null) {
+            return 0;
+        }
+        int drained = waiters.drain(action);
+        removeIfEmpty(topic);
+        return drained;
+    }
+
+    public int size(String topic) {
+        DeferredResultRegistry<T> waiters = topics.get(topic);
+        return waiters == null ? 0 : waiters.size();
+    }
+
+    public int topicCount() {
+        return topics.size();
+    }
+
+    public void close() {
+        Timeout sweeper = this.sweeper;
+        this.sweeper = null;
+        if (sweeper != null) {
+            sweeper.cancel();
+        }
+    }
+
+    private void removeIfEmpty(String topic) {
+        topics.computeIfPresent(topic, (key, waiters) -> waiters.isEmpty() ? null : waiters);
+    }
+
+    private void sweep(Timeout timeout) {
+        for (String topic : topics.keySet()) {
+            removeIfEmpty(topic);
+        }
+        if (!timeout.isCancelled() && sweeper == timeout) {
+            sweeper = timer.newTimeout(this::sweep, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
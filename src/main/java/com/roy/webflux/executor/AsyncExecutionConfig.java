@@ -0,0 +1,61 @@
+package com.roy.webflux.executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+// 컨트롤러가 반환한 Callable과 @Async 메서드를 어떤 스레드에서 실행할지 결정한다.
+// async.mode=pool(기본값)이면 지금까지와 같이 @Async는 등록된 스레드 풀(myExecutors, myThreadPool)을 사용한다.
+// Callable은 ManagedTaskExecutor 빈이 하나만 등록되어 있다면 해당 executor에서 실행하여 큐의 크기 제한과 거절 정책을 적용하고, 없다면 스프링 MVC의 기본 executor를 사용한다.
+// async.mode=virtual이면 Java 21의 가상 스레드에서 실행한다. 스레드 풀의 크기 제한 없이 블로킹 코드를 그대로 사용할 수 있다.
+// Java 21 미만에서 virtual을 지정하면 경고를 남기고 pool 모드로 동작한다.
+@Slf4j
+@Configuration
+public class AsyncExecutionConfig implements AsyncConfigurer, WebMvcConfigurer, DisposableBean {
+    private final ExecutorService virtualExecutor;
+    private final TaskExecutorAdapter virtualTaskExecutor;
+    private final ObjectProvider<ManagedTaskExecutor> managedExecutor;
+
+    public AsyncExecutionConfig(@Value("${async.mode:pool}") String mode,
+                                ObjectProvider<ManagedTaskExecutor> managedExecutor) {
+        this.managedExecutor = managedExecutor;
+        boolean virtual = "virtual".equalsIgnoreCase(mode);
+        if (virtual && !VirtualThreads.isSupported()) {
+            log.warn("async.mode=virtual requires Java 21 or later, falling back to pool mode");
+            virtual = false;
+        }
+        this.virtualExecutor = virtual ? VirtualThreads.newExecutor("virtual-") : null;
+        this.virtualTaskExecutor = virtual ? new TaskExecutorAdapter(virtualExecutor) : null;
+    }
+
+    // null을 반환하면 스프링이 기존과 같은 방식으로 @Async에 사용할 TaskExecutor 빈을 찾는다.
+    @Override
+    public Executor getAsyncExecutor() {
+        return virtualTaskExecutor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (virtualTaskExecutor != null) {
+            configurer.setTaskExecutor(virtualTaskExecutor);
+            return;
+        }
+        managedExecutor.ifUnique(configurer::setTaskExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.roy.webflux.executor;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 등록된 ManagedTaskExecutor의 큐 깊이, 활성 스레드 수, 대기 시간과 실행 시간을 빈 이름별로 보여준다.
+// /executors/hybrid는 HybridExecutor별로 호출한 스레드에서 바로 실행된 횟수와 풀로 넘긴 횟수, 추정 비용을 보여준다.
+// /runtime은 JVM 전체의 스레드 수와 힙 사용량을, 마지막으로 /runtime/reset을 호출한 이후의 최댓값과 함께 보여준다.
+// 부하 테스트 전에 POST /runtime/reset을 호출하고 끝난 뒤에 /runtime을 호출하면 테스트 동안의 최대 스레드 수와 힙 사용량을 알 수 있다.
+@RestController
+public class ExecutorController {
+    private final ApplicationContext context;
+
+    public ExecutorController(ApplicationContext context) {
+        this.context = context;
+    }
+
+    @GetMapping("/executors")
+    public Map<String, Object> executors() {
+        Map<String, Object> snapshots = new LinkedHashMap<>();
+        context.getBeansOfType(ManagedTaskExecutor.class).forEach((name, executor) -> snapshots.put(name, executor.snapshot()));
+        return snapshots;
+    }
+
+    @GetMapping("/executors/hybrid")
+    public Map<String, Object> hybridExecutors() {
+        Map<String, Object> snapshots = new LinkedHashMap<>();
+        context.getBeansOfType(HybridExecutor.class).forEach((name, executor) -> snapshots.put(name, executor.snapshot()));
+        return snapshots;
+    }
+
+    @GetMapping("/runtime")
+    public Map<String, Object> runtime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long heapUsed = 0;
+        long peakHeapUsed = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapUsed += pool.getUsage().getUsed();
+                peakHeapUsed += pool.getPeakUsage().getUsed();
+            }
+        }
+        Map<String, Object> runtime = new LinkedHashMap<>();
+        runtime.put("threads", threads.getThreadCount());
+        runtime.put("peakThreads", threads.getPeakThreadCount());
+        runtime.put("heapUsedMb", heapUsed / (1024 * 1024));
+        runtime.put("peakHeapUsedMb", peakHeapUsed / (1024 * 1024));
+        return runtime;
+    }
+
+    // 최댓값을 초기화하는 요청이므로 GET이 아닌 POST로 받는다.
+    @PostMapping("/runtime/reset")
+    public Map<String, Object> resetRuntime() {
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        return runtime();
+    }
+}
@@ -0,0 +1,79 @@
+package com.roy.webflux.executor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 비용이 작은 작업은 호출한 스레드에서 바로 실행하고 비용이 큰 작업만 work-stealing 풀로 넘기는 executor다.
+// 문자열을 만들어서 반환하는 정도의 @Async 메서드는 큐에 넣고 다른 스레드로 옮기는 비용이 실제 작업보다 훨씬 크다.
+// 특히 스레드가 하나뿐인 풀을 사용하면 모든 요청이 그 스레드 하나를 거쳐야 하기 때문에 요청 처리 전체가 직렬화된다.
+// 작업의 비용은 실행 시간의 지수 이동 평균(EWMA)으로 추정하며, 추정값이 inlineThreshold 이하라면 호출한 스레드에서 실행한다.
+// 처음에는 추정값이 없으므로 바로 실행해보고, 작업이 느려져서 추정값이 커지면 그때부터 풀로 넘긴다.
+// 바로 실행한 작업이 다시 같은 executor를 호출하여 스택이 깊어지는 것을 막기 위해 중첩된 깊이가 maxInlineDepth를 넘으면 풀로 넘긴다.
+// @Async("빈 이름")으로 메서드마다 다른 HybridExecutor를 지정하면 메서드별로 바로 실행된 횟수와 풀로 넘긴 횟수를 알 수 있다.
+public class HybridExecutor implements Executor {
+    private static final double ALPHA = 0.2;
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final String name;
+    private final ForkJoinPool pool;
+    private final long inlineThresholdNanos;
+    private final int maxInlineDepth;
+    private final LongAdder inlined = new LongAdder();
+    private final LongAdder offloaded = new LongAdder();
+    // 여러 스레드가 동시에 갱신하면 일부 측정값이 유실될 수 있지만 추정값으로만 사용하기 때문에 락을 사용하지 않는다.
+    private volatile double costNanos;
+
+    public HybridExecutor(String name, ForkJoinPool pool, long inlineThresholdMicros, int maxInlineDepth) {
+        this.name = name;
+        this.pool = pool;
+        this.inlineThresholdNanos = TimeUnit.MICROSECONDS.toNanos(inlineThresholdMicros);
+        this.maxInlineDepth = maxInlineDepth;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        int[] depth = DEPTH.get();
+        if (costNanos <= inlineThresholdNanos && depth[0] < maxInlineDepth) {
+            inlined.increment();
+            depth[0]++;
+            try {
+                measure(task);
+            } finally {
+                depth[0]--;
+            }
+            return;
+        }
+        offloaded.increment();
+        pool.execute(() -> measure(task));
+    }
+
+    public long estimatedCostMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) costNanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("name", name);
+        snapshot.put("inlined", inlined.sum());
+        snapshot.put("offloaded", offloaded.sum());
+        snapshot.put("estimatedCostMicros", estimatedCostMicros());
+        snapshot.put("inlineThresholdMicros", TimeUnit.NANOSECONDS.toMicros(inlineThresholdNanos));
+        snapshot.put("poolParallelism", pool.getParallelism());
+        snapshot.put("poolQueued", pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        return snapshot;
+    }
+
+    private void measure(Runnable task) {
+        long startedAt = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            costNanos = costNanos + ALPHA * (elapsed - costNanos);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.roy.webflux.executor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+// 비용이 작은 @Async 메서드가 사용할 HybridExecutor를 메서드마다 하나씩 등록한다.
+// 메서드에는 @Async("myLogicWork")와 같이 빈 이름을 지정하며, 풀로 넘겨지는 작업은 모두 하나의 work-stealing 풀(hybridPool)을 공유한다.
+// @Async의 기본 executor를 찾는 과정에 영향을 주지 않도록 TaskExecutor가 아닌 Executor와 ForkJoinPool로 등록한다.
+// 메서드별로 바로 실행된 횟수와 풀로 넘긴 횟수는 /executors/hybrid에서 확인할 수 있다.
+@Configuration
+public class HybridExecutorConfig {
+    private final long inlineThresholdMicros;
+    private final int maxInlineDepth;
+
+    public HybridExecutorConfig(@Value("${async.hybrid.inline-threshold-us:50}") long inlineThresholdMicros,
+                                @Value("${async.hybrid.max-inline-depth:4}") int maxInlineDepth) {
+        this.inlineThresholdMicros = inlineThresholdMicros;
+        this.maxInlineDepth = maxInlineDepth;
+    }
+
+    // parallelism을 지정하지 않으면 CPU 코어 수만큼 스레드를 사용한다. asyncMode는 제출된 순서대로 실행되도록 FIFO로 설정한다.
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool hybridPool(@Value("${async.hybrid.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    @Bean
+    public HybridExecutor myLogicWork(ForkJoinPool hybridPool) {
+        return new HybridExecutor("MyLogic.work", hybridPool, inlineThresholdMicros, maxInlineDepth);
+    }
+
+    @Bean
+    public HybridExecutor practiceWork(ForkJoinPool hybridPool) {
+        return new HybridExecutor("WebFluxController.MyService.work", hybridPool, inlineThresholdMicros, maxInlineDepth);
+    }
+}
@@ -0,0 +1,109 @@
+package com.roy.webflux.executor;
+
+import com.roy.webflux.util.Histogram;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 큐의 크기를 제한하고 상태를 관찰할 수 있는 ThreadPoolTaskExecutor다.
+// ThreadPoolTaskExecutor의 기본 설정은 큐의 크기가 무제한인 LinkedBlockingQueue를 사용하기 때문에
+// 처리량보다 많은 요청이 들어오면 거절되지 않고 큐에 계속 쌓이면서 응답 시간과 힙 사용량이 끝없이 늘어난다.
+// ManagedTaskExecutor는 큐의 크기를 제한하고 큐가 가득 차면 RejectionPolicy에 따라 작업을 거절하여 부하를 덜어낸다.
+// 작업이 큐에서 기다린 시간과 실행된 시간은 TaskDecorator로 측정하여 히스토그램에 기록한다.
+// DISCARD_OLDEST는 ThreadPoolExecutor.DiscardOldestPolicy를 그대로 쓰지 않고 직접 처리한다.
+// DiscardOldestPolicy는 버린 작업을 어디에도 남기지 않으므로 버린 작업의 수를 discarded로 집계하고 작업의 Future를 취소한다.
+public class ManagedTaskExecutor extends ThreadPoolTaskExecutor {
+    private final Histogram waitTimes = new Histogram();
+    private final Histogram runTimes = new Histogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+    public ManagedTaskExecutor() {
+        setTaskDecorator(MeasuredTask::new);
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler ignored) {
+        RejectedExecutionHandler handler = rejectionPolicy == RejectionPolicy.DISCARD_OLDEST
+                ? this::discardOldest
+                : rejectionPolicy.handler();
+        return super.initializeExecutor(threadFactory, (task, executor) -> {
+            rejected.increment();
+            handler.rejectedExecution(task, executor);
+        });
+    }
+
+    // 다시 execute하면 TaskDecorator가 한 번 더 적용되므로 새로운 작업은 이미 감싸진 그대로 큐에 넣는다.
+    private void discardOldest(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        while (!queue.offer(task)) {
+            Runnable oldest = queue.poll();
+            if (oldest != null) {
+                discarded.increment();
+                cancel(oldest);
+            }
+        }
+    }
+
+    // 컨트롤러의 Callable은 FutureTask로 제출되므로 취소하면 Future를 기다리는 쪽에서 버려진 것을 알 수 있다.
+    private void cancel(Runnable task) {
+        Runnable original = task instanceof MeasuredTask ? ((MeasuredTask) task).task : task;
+        if (original instanceof Future) {
+            ((Future<?>) original).cancel(false);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        ThreadPoolExecutor executor = getThreadPoolExecutor();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        snapshot.put("rejectionPolicy", rejectionPolicy);
+        snapshot.put("poolSize", executor.getPoolSize());
+        snapshot.put("activeCount", executor.getActiveCount());
+        snapshot.put("queueDepth", queue.size());
+        snapshot.put("queueRemainingCapacity", queue.remainingCapacity());
+        snapshot.put("completed", executor.getCompletedTaskCount());
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("discarded", discarded.sum());
+        snapshot.put("waitMicros", waitTimes.snapshot());
+        snapshot.put("runMicros", runTimes.snapshot());
+        return snapshot;
+    }
+
+    private final class MeasuredTask implements Runnable {
+        private final Runnable task;
+        private final long submittedAt = System.nanoTime();
+
+        private MeasuredTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            waitTimes.record(TimeUnit.NANOSECONDS.toMicros(startedAt - submittedAt));
+            try {
+                task.run();
+            } finally {
+                runTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+            }
+        }
+    }
+}
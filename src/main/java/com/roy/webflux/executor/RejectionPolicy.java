@@ -0,0 +1,25 @@
+package com.roy.webflux.executor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// 큐가 가득 찼을 때 새로운 작업을 어떻게 처리할지 결정한다.
+// ABORT: 작업을 거절한다. 컨트롤러의 Callable이 거절되면 503 Service Unavailable과 Retry-After 헤더로 응답한다.
+// CALLER_RUNS: 작업을 제출한 스레드에서 직접 실행한다. 제출하는 쪽의 속도가 자연스럽게 느려지지만 서블릿 스레드가 블로킹된다.
+// DISCARD_OLDEST: 큐에서 가장 오래 기다린 작업을 버리고 새로운 작업을 넣는다. 버려진 작업의 요청은 타임아웃될 때까지 응답받지 못한다.
+// ManagedTaskExecutor는 버려진 작업의 수를 집계하고 작업의 Future를 취소한다.
+public enum RejectionPolicy {
+    ABORT(new ThreadPoolExecutor.AbortPolicy()),
+    CALLER_RUNS(new ThreadPoolExecutor.CallerRunsPolicy()),
+    DISCARD_OLDEST(new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    private final RejectedExecutionHandler handler;
+
+    RejectionPolicy(RejectedExecutionHandler handler) {
+        this.handler = handler;
+    }
+
+    public RejectedExecutionHandler handler() {
+        return handler;
+    }
+}
@@ -0,0 +1,31 @@
+package com.roy.webflux.executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.concurrent.RejectedExecutionException;
+
+// 컨트롤러가 반환한 Callable을 executor가 거절하면 스프링 MVC는 RejectedExecutionException을 비동기 처리의 결과로 디스패치한다.
+// 이를 503 Service Unavailable로 변환하고 Retry-After 헤더로 클라이언트가 언제 다시 시도하면 되는지 알려준다.
+@Slf4j
+@RestControllerAdvice
+public class TaskRejectedAdvice {
+    private final long retryAfterSeconds;
+
+    public TaskRejectedAdvice(@Value("${executor.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> rejected(RejectedExecutionException ex) {
+        log.debug("Task rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body("Server busy");
+    }
+}
@@ -0,0 +1,45 @@
+package com.roy.webflux.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Java 21의 가상 스레드(Virtual Thread)로 작업을 실행하는 ExecutorService를 만든다.
+// 프로젝트는 Java 11을 대상으로 빌드하기 때문에 Thread.ofVirtual()을 직접 호출할 수 없어서 리플렉션으로 호출한다.
+// Java 21 이상에서 실행하는 경우에만 사용할 수 있으며 isSupported()로 먼저 확인해야 한다.
+// 가상 스레드는 블로킹되는 순간 캐리어 스레드를 반납하기 때문에 스레드 풀의 크기에 제한받지 않고 스레드당 요청 방식의 코드를 그대로 사용할 수 있다.
+public final class VirtualThreads {
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    public static ExecutorService newExecutor(String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,30 +1,46 @@
 package com.roy.webflux.mvc.controller;
 
+import com.roy.webflux.executor.AsyncExecutionConfig;
+import com.roy.webflux.executor.ExecutorController;
+import com.roy.webflux.executor.HybridExecutorConfig;
+import com.roy.webflux.mvc.controller.remote.Deadline;
+import com.roy.webflux.mvc.controller.remote.DeadlineExceededException;
+import com.roy.webflux.mvc.controller.remote.RemoteClient;
+import com.roy.webflux.mvc.controller.remote.RemoteResponseCache;
 import com.roy.webflux.mvc.controller.service.MyLogic;
 import com.roy.webflux.util.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.Netty4ClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 @EnableAsync
 @SpringBootApplication
+@Import({AsyncExecutionConfig.class, HybridExecutorConfig.class, ExecutorController.class})
 public class CallbackHellService {
 
+    // DeferredResult를 반환하는 컨트롤러이므로 서블릿(스프링 MVC) 스택으로 실행한다. (application.yml의 spring.main.web-application-type)
     public static void main(String[] args) {
         SpringApplication.run(CallbackHellService.class);
     }
@@ -39,9 +55,11 @@ public class CallbackHellService {
         private final static String URL_1 = "http://localhost:8081/remote-service-1/{request}";
         private final static String URL_2 = "http://localhost:8081/remote-service-2/{request}";
 
-        AsyncRestTemplate rt = new AsyncRestTemplate(
-                new Netty4ClientHttpRequestFactory(
-                        new NioEventLoopGroup(1)));
+        // 커넥션 풀을 사용하는 공유 클라이언트로 MyService와 같은 연결을 재사용한다.
+        @Autowired
+        private RemoteClient rt;
+        @Autowired
+        private RemoteResponseCache cache;
 
         @GetMapping("/callback-hell/rest/{idx}")
         public DeferredResult<String> callbackHellRest(@PathVariable int idx) {
@@ -92,55 +110,247 @@ public class CallbackHellService {
             return cf;
         }
 
+        // /callback-hell/resolve/* 요청은 Deadline.HEADER 헤더 또는 remote.deadline.default-ms로 시간 예산을 받는다.
+        // 예산이 지나면 DeferredResult가 타임아웃되어 클라이언트에게 바로 응답하고,
+        // 아직 보내지 않은 remote-service 호출과 MyLogic.work는 실행하지 않고 실패한다.
+        // 보내는 호출에는 남은 예산을 같은 헤더로 전달하여 RemoteService도 남은 시간 이상으로 일하지 않도록 한다.
+        // 여러 요청이 함께 사용하는 호출(SingleFlight, 캐시)은 처음 호출을 보낸 요청의 예산을 전달하고, 합류한 요청은 그 예산 안에서 결과를 함께 받는다.
+        // 합류한 요청의 예산이 더 길더라도 원격 호출은 처음 요청의 예산이 지나면 DeadlineExceededException으로 끝난다.
+        @Value("${remote.deadline.default-ms:10000}")
+        private long defaultBudget;
+        @Value("${remote.deadline.max-ms:60000}")
+        private long maxBudget;
+
+        // v5, hedged, offload는 CompletionV5의 timeout으로 원격 호출 하나가 remote.completion.stage-timeout-ms 안에 응답하지 않으면 포기한다.
+        // DeferredResult가 끝나면(결과 설정, 타임아웃, 클라이언트 연결 종료) 체인을 취소하여 아직 기다리는 원격 호출의 커넥션을 바로 반환한다.
+        // v5의 SingleFlight와 캐시처럼 여러 요청이 함께 기다리는 호출은 기다리던 모든 요청이 취소한 경우에만 원격 호출을 취소한다.
+        @Value("${remote.completion.stage-timeout-ms:5000}")
+        private long stageTimeout;
+
+        private Deadline deadline(Long budget) {
+            return Deadline.fromHeader(budget, defaultBudget, maxBudget);
+        }
+
+        // 예산이 지나서 DeferredResult가 타임아웃되면 스프링 MVC의 기본 응답(503) 대신 DeadlineExceededException(504)으로 응답한다.
+        private DeferredResult<String> deferredResult(Deadline deadline, String operation) {
+            DeferredResult<String> dr = new DeferredResult<>(Math.max(1, deadline.remainingMillis()));
+            dr.onTimeout(() -> dr.setErrorResult(new DeadlineExceededException(operation)));
+            return dr;
+        }
+
+        private <T> ListenableFuture<T> beforeDeadline(Deadline deadline, String operation, Supplier<ListenableFuture<T>> call) {
+            if (deadline.isExpired()) {
+                return AsyncResult.forExecutionException(new DeadlineExceededException(operation));
+            }
+            return call.get();
+        }
+
         @GetMapping("/callback-hell/resolve/v1/{idx}")
-        public DeferredResult<String> callbackHellResolveV1(@PathVariable int idx) {
-            DeferredResult<String> dr = new DeferredResult<>();
+        public DeferredResult<String> callbackHellResolveV1(@PathVariable int idx,
+                                                            @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/v1");
             CompletionV1
-                    .from(rt.getForEntity(URL_1, String.class, "v1_" + idx))
+                    .from(rt.getForEntity(deadline, URL_1, String.class, "v1_" + idx))
                     .andAccept(success -> dr.setResult(success.getBody()));
             return dr;
         }
 
         @GetMapping("/callback-hell/resolve/v2/{idx}")
-        public DeferredResult<String> callbackHellResolveV2(@PathVariable int idx) {
-            DeferredResult<String> dr = new DeferredResult<>();
+        public DeferredResult<String> callbackHellResolveV2(@PathVariable int idx,
+                                                            @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/v2");
             CompletionV2
-                    .from(rt.getForEntity(URL_1, String.class, "v2_" + idx))
-                    .andApply(success -> rt.getForEntity(URL_2, String.class, success.getBody()))
+                    .from(rt.getForEntity(deadline, URL_1, String.class, "v2_" + idx))
+                    .andApply(success -> rt.getForEntity(deadline, URL_2, String.class, success.getBody()))
                     .andAccept(success -> dr.setResult(success.getBody()));
             return dr;
         }
 
         @GetMapping("/callback-hell/resolve/v3/{idx}")
-        public DeferredResult<String> callbackHellResolveV3(@PathVariable int idx) {
-            DeferredResult<String> dr = new DeferredResult<>();
+        public DeferredResult<String> callbackHellResolveV3(@PathVariable int idx,
+                                                            @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/v3");
             CompletionV3
-                    .from(rt.getForEntity(URL_1, String.class, "v3_" + idx))
-                    .andApply(success -> rt.getForEntity(URL_2, String.class, success.getBody()))
+                    .from(rt.getForEntity(deadline, URL_1, String.class, "v3_" + idx))
+                    .andApply(success -> rt.getForEntity(deadline, URL_2, String.class, success.getBody()))
                     .andAccept(success -> dr.setResult(success.getBody()));
             return dr;
         }
 
         @GetMapping("/callback-hell/resolve/v4/{idx}")
-        public DeferredResult<String> callbackHellResolveV4(@PathVariable int idx) {
-            DeferredResult<String> dr = new DeferredResult<>();
+        public DeferredResult<String> callbackHellResolveV4(@PathVariable int idx,
+                                                            @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/v4");
             CompletionV4
-                    .from(rt.getForEntity(URL_1, String.class, "v4_" + idx))
-                    .andApply(success -> rt.getForEntity(URL_2, String.class, success.getBody()))
+                    .from(rt.getForEntity(deadline, URL_1, String.class, "v4_" + idx))
+                    .andApply(success -> rt.getForEntity(deadline, URL_2, String.class, success.getBody()))
                     .andError(dr::setErrorResult)
                     .andAccept(success -> dr.setResult(success.getBody()));
             return dr;
         }
 
+        // 첫 번째 호출(URL_1)은 같은 idx로 동시에 들어온 요청끼리 한 번만 실행하고 결과를 함께 사용한다.
+        // 두 번째 호출(URL_2)은 응답 캐시를 거치기 때문에 이미 조회한 결과라면 remote-service를 호출하지 않는다.
+        // 호출 횟수와 합류한 요청의 수는 /callback-hell/resolve/v5/stats에서 확인할 수 있다.
+        private final SingleFlight<String, ResponseEntity<String>> v5Flight = new SingleFlight<>();
+
         @GetMapping("/callback-hell/resolve/v5/{idx}")
-        public DeferredResult<String> callbackHellResolveV5(@PathVariable int idx) {
-            DeferredResult<String> dr = new DeferredResult<>();
-            CompletionV5
-                    .from(rt.getForEntity(URL_1, String.class, "v5_" + idx))
-                    .andApply(success -> rt.getForEntity(URL_2, String.class, success.getBody()))
-                    .andApply(success -> myLogic.work(success.getBody()))
+        public DeferredResult<String> callbackHellResolveV5(@PathVariable int idx,
+                                                            @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/v5");
+            String request = "v5_" + idx;
+            CompletionV5<?, Void> completion = CompletionV5
+                    .from(beforeDeadline(deadline, URL_1, () -> v5Flight.execute(request, () -> rt.getForEntity(deadline, URL_1, String.class, request))))
+                    .timeout(stageTimeout)
+                    .andApply(success -> beforeDeadline(deadline, URL_2, () -> cache.getForEntity(deadline, URL_2, success.getBody())))
+                    .timeout(stageTimeout)
+                    .andApply(success -> myLogic.work(success.getBody(), deadline))
+                    .andError(dr::setErrorResult)
+                    .andAccept(dr::setResult);
+            dr.onCompletion(completion::cancel);
+            return dr;
+        }
+
+        @GetMapping("/callback-hell/resolve/v5/stats")
+        public Map<String, Object> callbackHellResolveV5Stats() {
+            return v5Flight.snapshot();
+        }
+
+        // v5와 같은 순서의 호출(SingleFlight, 응답 캐시, MyLogic.work)을 컨트롤러가 만들어질 때 한 번만 구성한 CompletionPipeline 템플릿으로 실행한다.
+        // 요청마다 Completion 체인과 람다를 새로 만들지 않고 요청의 값을 담은 PipelineRequest 하나만 만들어서 전달한다.
+        // SingleFlight에 넘기는 호출도 요청을 캡처하지 않도록 PipelineRequest를 context로 받는 함수를 한 번만 만들어둔다.
+        // v5와 달리 단계마다 remote.completion.stage-timeout-ms를 적용하지 않고, DeferredResult가 끝나도 체인을 취소하지 않는다.
+        // 예산이 지나면 클라이언트에게는 504로 바로 응답하지만 이미 보낸 원격 호출은 응답이 올 때까지 커넥션을 점유하고,
+        // 다음 단계는 시작 전에 예산을 확인하여 실행하지 않는다.
+        // CompletionPipeline에는 아직 timeout과 취소가 없으므로 이 엔드포인트는 할당량 비교용이며 v5를 대신하지 않는다.
+        private final Function<PipelineRequest, ListenableFuture<ResponseEntity<String>>> pipelineUrl1 =
+                req -> rt.getForEntity(req.deadline, URL_1, String.class, req.request);
+
+        private final CompletionPipeline<PipelineRequest, Void> v5Pipeline = CompletionPipeline
+                .<PipelineRequest, ResponseEntity<String>>from(req -> req.deadline.isExpired()
+                        ? AsyncResult.forExecutionException(new DeadlineExceededException(URL_1))
+                        : v5Flight.execute(req.request, req, pipelineUrl1))
+                .andApply((req, success) -> req.deadline.isExpired()
+                        ? AsyncResult.forExecutionException(new DeadlineExceededException(URL_2))
+                        : cache.getForEntity(req.deadline, URL_2, success.getBody()))
+                .andApply((req, success) -> myLogic.work(success.getBody(), req.deadline))
+                .andError((req, e) -> req.dr.setErrorResult(e))
+                .andAccept((req, result) -> req.dr.setResult(result));
+
+        @GetMapping("/callback-hell/resolve/pipeline/{idx}")
+        public DeferredResult<String> callbackHellResolvePipeline(@PathVariable int idx,
+                                                                  @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/pipeline");
+            v5Pipeline.run(new PipelineRequest("v5_" + idx, deadline, dr));
+            return dr;
+        }
+
+        private static final class PipelineRequest {
+            private final String request;
+            private final Deadline deadline;
+            private final DeferredResult<String> dr;
+
+            private PipelineRequest(String request, Deadline deadline, DeferredResult<String> dr) {
+                this.request = request;
+                this.deadline = deadline;
+                this.dr = dr;
+            }
+        }
+
+        // v5와 같은 두 번의 호출이지만 각 호출에 hedge를 적용하여 꼬리 지연(p99)을 줄인다.
+        // 호출이 remote.hedge.percentile에 해당하는 응답 시간 안에 응답하지 않으면 같은 호출을 한 번 더 보내고 먼저 성공한 응답을 사용한다.
+        // hedge의 수는 전체 호출의 remote.hedge.budget 비율을 넘지 않으며 라우트마다 응답 시간 분포를 따로 기록한다.
+        // hedge를 보낸 횟수와 hedge가 먼저 응답한 횟수는 /callback-hell/resolve/hedged/stats에서 확인할 수 있다.
+        private final Hedger url1Hedger;
+        private final Hedger url2Hedger;
+        private final ForkJoinPool offloadPool;
+
+        public CallbackHellController(@Value("${remote.hedge.percentile:0.95}") double percentile,
+                                      @Value("${remote.hedge.budget:0.05}") double budget,
+                                      @Value("${remote.hedge.min-delay-ms:10}") long minDelay,
+                                      @Value("${remote.hedge.warmup:100}") long warmup,
+                                      @Qualifier("hybridPool") ForkJoinPool offloadPool) {
+            this.url1Hedger = new Hedger(percentile, budget, minDelay, warmup);
+            this.url2Hedger = new Hedger(percentile, budget, minDelay, warmup);
+            this.offloadPool = offloadPool;
+        }
+
+        @GetMapping("/callback-hell/resolve/hedged/{idx}")
+        public DeferredResult<String> callbackHellResolveHedged(@PathVariable int idx,
+                                                                @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/hedged");
+            CompletionV5<?, Void> completion = CompletionV5
+                    .from(url1Hedger.call(() -> rt.getForEntity(deadline, URL_1, String.class, "hedged_" + idx)))
+                    .timeout(stageTimeout)
+                    .andApply(success -> url2Hedger.call(() -> rt.getForEntity(deadline, URL_2, String.class, success.getBody())))
+                    .timeout(stageTimeout)
+                    .andApply(success -> myLogic.work(success.getBody(), deadline))
+                    .andError(dr::setErrorResult)
+                    .andAccept(dr::setResult);
+            dr.onCompletion(completion::cancel);
+            return dr;
+        }
+
+        @GetMapping("/callback-hell/resolve/hedged/stats")
+        public Map<String, Object> callbackHellResolveHedgedStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("remote-service-1", url1Hedger.snapshot());
+            stats.put("remote-service-2", url2Hedger.snapshot());
+            return stats;
+        }
+
+        // remote-service의 응답을 받은 이후의 단계는 RemoteClient의 이벤트 루프 스레드에서 실행된다.
+        // MyLogic.work는 HybridExecutor에 의해 호출한 스레드에서 바로 실행될 수 있으므로 그 전에 hybridPool로 옮겨서 이벤트 루프가 I/O만 처리하도록 한다.
+        // 단계마다 스레드를 옮긴 횟수와 이벤트 루프에서 실행된 시간은 /callback-hell/resolve/offload/stats에서 확인할 수 있다.
+        private final CompletionStats offloadStats = new CompletionStats();
+
+        @GetMapping("/callback-hell/resolve/offload/{idx}")
+        public DeferredResult<String> callbackHellResolveOffload(@PathVariable int idx,
+                                                                 @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/offload");
+            CompletionV5<?, Void> completion = CompletionV5
+                    .from(rt.getForEntity(deadline, URL_1, String.class, "offload_" + idx), offloadStats)
+                    .timeout(stageTimeout)
+                    .andApply(success -> rt.getForEntity(deadline, URL_2, String.class, success.getBody()))
+                    .timeout(stageTimeout)
+                    .andPublishOn(offloadPool)
+                    .andApply(success -> myLogic.work(success.getBody(), deadline))
+                    .andError(dr::setErrorResult)
+                    .andAccept(dr::setResult);
+            dr.onCompletion(completion::cancel);
+            return dr;
+        }
+
+        @GetMapping("/callback-hell/resolve/offload/stats")
+        public Map<String, Object> callbackHellResolveOffloadStats() {
+            return offloadStats.snapshot();
+        }
+
+        // remote-service-1과 remote-service-2를 서로의 응답을 기다리지 않고 동시에 호출한 뒤 두 응답을 합쳐서 MyLogic.work에 전달한다.
+        // 두 호출이 각각 2초씩 걸리더라도 순서대로 호출하는 v5와 달리 전체 응답 시간은 약 2초다.
+        // 하나라도 실패하면 나머지 호출을 취소하고 바로 에러로 응답한다.
+        @GetMapping("/callback-hell/resolve/zip/{idx}")
+        public DeferredResult<String> callbackHellResolveZip(@PathVariable int idx,
+                                                             @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Deadline deadline = deadline(budget);
+            DeferredResult<String> dr = deferredResult(deadline, "/callback-hell/resolve/zip");
+            CompletionV5<?, Void> completion = CompletionV5
+                    .from(ListenableFutures.zip(
+                            rt.getForEntity(deadline, URL_1, String.class, "zip1_" + idx),
+                            rt.getForEntity(deadline, URL_2, String.class, "zip2_" + idx)))
+                    .timeout(stageTimeout)
+                    .andApply(both -> myLogic.work(both.getT1().getBody() + ", " + both.getT2().getBody(), deadline))
                     .andError(dr::setErrorResult)
                     .andAccept(dr::setResult);
+            dr.onCompletion(completion::cancel);
             return dr;
         }
     }
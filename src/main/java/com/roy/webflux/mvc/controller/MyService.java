@@ -1,35 +1,56 @@
 package com.roy.webflux.mvc.controller;
 
+import com.roy.webflux.executor.AsyncExecutionConfig;
+import com.roy.webflux.executor.ExecutorController;
+import com.roy.webflux.executor.HybridExecutorConfig;
+import com.roy.webflux.mvc.controller.remote.RemoteBatchCollector;
+import com.roy.webflux.mvc.controller.remote.RemoteClient;
+import com.roy.webflux.mvc.controller.remote.RemoteResponseCache;
 import com.roy.webflux.mvc.controller.service.MyLogic;
-import io.netty.channel.nio.NioEventLoopGroup;
+import com.roy.webflux.util.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.Netty4ClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Slf4j
 @EnableAsync
 @SpringBootApplication
+@Import({AsyncExecutionConfig.class, HybridExecutorConfig.class, ExecutorController.class})
 public class MyService {
     @RestController
     public static class MyController {
-        private AsyncRestTemplate nettyRestTemplate = new AsyncRestTemplate(new Netty4ClientHttpRequestFactory(
-                new NioEventLoopGroup(1)
-        ));
+        // Netty 기반의 호출은 커넥션 풀을 사용하는 공유 클라이언트(RemoteClient)를 사용한다.
+        @Autowired
+        private RemoteClient remoteClient;
         private AsyncRestTemplate asyncRestTemplate = new AsyncRestTemplate();
         private RestTemplate restTemplate = new RestTemplate();
         @GetMapping("/my-service/rest/{idx}")
@@ -43,9 +64,19 @@ public class MyService {
             return asyncRestTemplate.getForEntity("http://localhost:8081/remote-service/{request}", String.class, idx);
         }
 
+        // 같은 idx로 동시에 들어온 요청은 remote-service를 한 번만 호출하고 결과를 함께 받는다.
+        // 호출 횟수와 합류한 요청의 수는 /my-service/async-netty/stats에서 확인할 수 있다.
+        private final SingleFlight<String, ResponseEntity<String>> nettyFlight = new SingleFlight<>();
+
         @GetMapping("/my-service/async-netty/{idx}")
         public ListenableFuture<ResponseEntity<String>> nettyService(@PathVariable String idx) {
-            return nettyRestTemplate.getForEntity("http://localhost:8081/remote-service/{request}", String.class, idx);
+            return nettyFlight.execute(idx,
+                    () -> remoteClient.getForEntity("http://localhost:8081/remote-service/{request}", String.class, idx));
+        }
+
+        @GetMapping("/my-service/async-netty/stats")
+        public Map<String, Object> nettyServiceStats() {
+            return nettyFlight.snapshot();
         }
 
         @GetMapping("/my-service/async-custom/{idx}")
@@ -61,15 +92,20 @@ public class MyService {
             return deferredResult;
         }
 
+        // remote-service의 응답은 같은 요청에 대해 항상 같으므로 두 번의 호출 모두 캐시(RemoteResponseCache)를 거친다.
+        // 캐시의 적중률과 제거된 항목의 수는 /remote-client/stats에서 확인할 수 있다.
+        @Autowired
+        private RemoteResponseCache remoteResponseCache;
+
         @GetMapping("/my-service/async-complex/{idx}")
         public DeferredResult<String> complexAsyncService(@PathVariable String idx) {
             DeferredResult<String> deferredResult = new DeferredResult<>();
 
-            ListenableFuture<ResponseEntity<String>> future1 = nettyRestTemplate.getForEntity(
-                    "http://localhost:8081/remote-service-1/{request}", String.class, idx);
+            ListenableFuture<ResponseEntity<String>> future1 = remoteResponseCache.getForEntity(
+                    "http://localhost:8081/remote-service-1/{request}", idx);
             future1.addCallback(success -> {
-                ListenableFuture<ResponseEntity<String>> future2 = nettyRestTemplate.getForEntity(
-                        "http://localhost:8081/remote-service-2/{request}", String.class, Objects.requireNonNull(success).getBody());
+                ListenableFuture<ResponseEntity<String>> future2 = remoteResponseCache.getForEntity(
+                        "http://localhost:8081/remote-service-2/{request}", Objects.requireNonNull(success).getBody());
                 future2.addCallback(success2 -> {
                             deferredResult.setResult(Objects.requireNonNull(success2).getBody());
                         }, ex2 -> {
@@ -88,10 +124,10 @@ public class MyService {
         public DeferredResult<String> complexAsyncWithService(@PathVariable String idx) {
             DeferredResult<String> deferredResult = new DeferredResult<>();
 
-            ListenableFuture<ResponseEntity<String>> future1 = nettyRestTemplate.getForEntity(
+            ListenableFuture<ResponseEntity<String>> future1 = remoteClient.getForEntity(
                     "http://localhost:8081/remote-service-1/{request}", String.class, idx);
             future1.addCallback(success -> {
-                ListenableFuture<ResponseEntity<String>> future2 = nettyRestTemplate.getForEntity(
+                ListenableFuture<ResponseEntity<String>> future2 = remoteClient.getForEntity(
                         "http://localhost:8081/remote-service-2/{request}", String.class, Objects.requireNonNull(success).getBody());
                 future2.addCallback(success2 -> {
                     ListenableFuture<String> future3 = myLogic.work(Objects.requireNonNull(success2).getBody());
@@ -109,6 +145,151 @@ public class MyService {
             return deferredResult;
         }
 
+        // 단건 호출이지만 동시에 들어온 요청을 모아서 /remote-service-1/batch 한 번으로 보낸다.
+        // 1,000개의 요청이 동시에 들어오면 1,000번의 HTTP 호출 대신 remote.batch.max-size 단위의 배치 호출 몇십 번으로 처리된다.
+        // 배치 크기와 대기 시간의 분포는 /my-service/batched/stats에서 확인하고 remote.batch.* 설정으로 조정한다.
+        @Autowired
+        private RemoteBatchCollector remoteBatchCollector;
+
+        @GetMapping("/my-service/batched/{idx}")
+        public DeferredResult<String> batchedService(@PathVariable String idx) {
+            DeferredResult<String> deferredResult = new DeferredResult<>();
+            remoteBatchCollector.submit(idx).whenComplete((success, ex) -> {
+                if (ex != null) {
+                    deferredResult.setErrorResult(ex.getMessage());
+                } else {
+                    deferredResult.setResult(success);
+                }
+            });
+            return deferredResult;
+        }
+
+        @GetMapping("/my-service/batched/stats")
+        public Map<String, Object> batchedServiceStats() {
+            return remoteBatchCollector.snapshot();
+        }
+
+        // 여러 개의 id를 받아서 remote-service-1을 동시에 호출하고 결과를 모아서 반환한다. (scatter-gather)
+        // ids는 1..500과 같은 범위 또는 1,2,3과 같은 목록으로 전달한다.
+        // 동시에 호출하는 수는 remote.multi.concurrency로 제한하며, 응답은 NDJSON으로 도착하는 대로 한 줄씩 내려보낸다.
+        // ordered=true인 경우에는 flatMapSequential을 사용하여 요청한 순서대로 내려보낸다.
+        // 순서를 지키는 경우 앞의 응답이 늦으면 이미 도착한 뒤의 응답도 함께 기다린다.
+        // 하나의 호출이 실패하더라도 전체가 실패하지 않고 해당 항목에 오류를 담아서 반환한다.
+        // remote.multi.deadline-ms가 지나면 진행 중인 호출을 취소하고, 응답하지 못한 항목은 Deadline exceeded 오류로 반환한다.
+        private static final String DEADLINE_EXCEEDED = "Deadline exceeded";
+
+        @Value("${remote.multi.concurrency:64}")
+        private int multiConcurrency;
+        @Value("${remote.multi.deadline-ms:5000}")
+        private long multiDeadline;
+        @Value("${remote.multi.max-ids:1000}")
+        private int multiMaxIds;
+
+        @GetMapping(value = "/my-service/multi", produces = MediaType.APPLICATION_NDJSON_VALUE)
+        public Flux<MultiResult> multiService(@RequestParam String ids,
+                                              @RequestParam(defaultValue = "false") boolean ordered) {
+            return scatterGather(parseIds(ids, multiMaxIds), ordered, multiConcurrency, Duration.ofMillis(multiDeadline),
+                    id -> remoteClient.get("http://localhost:8081/remote-service-1/{request}", String.class, id)
+                            .map(ResponseEntity::getBody));
+        }
+
+        // 테스트에서 원격 호출을 대신할 수 있도록 호출(call)을 받는다.
+        static Flux<MultiResult> scatterGather(List<String> requests, boolean ordered, int concurrency, Duration deadline,
+                                               Function<String, Mono<String>> call) {
+            Set<Integer> answered = ConcurrentHashMap.newKeySet();
+            Flux<Integer> indexes = Flux.range(0, requests.size());
+            Function<Integer, Mono<MultiResult>> fetch = index -> fetch(index, requests.get(index), call);
+            Flux<MultiResult> results = ordered
+                    ? indexes.flatMapSequential(fetch, concurrency)
+                    : indexes.flatMap(fetch, concurrency);
+            return results
+                    .doOnNext(result -> answered.add(result.getIndex()))
+                    .take(deadline)
+                    .concatWith(Flux.defer(() -> Flux.range(0, requests.size())
+                            .filter(index -> !answered.contains(index))
+                            .map(index -> MultiResult.failure(index, requests.get(index), DEADLINE_EXCEEDED))));
+        }
+
+        private static Mono<MultiResult> fetch(int index, String id, Function<String, Mono<String>> call) {
+            return call.apply(id)
+                    .map(body -> MultiResult.success(index, id, body))
+                    .onErrorResume(ex -> Mono.just(MultiResult.failure(index, id, ex.getMessage())));
+        }
+
+        // 범위의 끝이 시작보다 작으면 빈 결과를 보내지 않고 400으로 거절한다.
+        static List<String> parseIds(String ids, int maxIds) {
+            List<String> requests = new ArrayList<>();
+            int range = ids.indexOf("..");
+            if (range > 0) {
+                long from;
+                long to;
+                try {
+                    from = Long.parseLong(ids.substring(0, range).trim());
+                    to = Long.parseLong(ids.substring(range + 2).trim());
+                } catch (NumberFormatException e) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid id range: " + ids);
+                }
+                if (to < from) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid id range: " + ids);
+                }
+                checkIdCount(to - from + 1, maxIds);
+                for (long id = from; id <= to; id++) {
+                    requests.add(String.valueOf(id));
+                }
+                return requests;
+            }
+            for (String id : ids.split(",")) {
+                if (!id.isBlank()) {
+                    requests.add(id.trim());
+                }
+            }
+            checkIdCount(requests.size(), maxIds);
+            return requests;
+        }
+
+        private static void checkIdCount(long count, int maxIds) {
+            if (count > maxIds) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many ids: " + count + " > " + maxIds);
+            }
+        }
+    }
+
+    public static class MultiResult {
+        private final int index;
+        private final String id;
+        private final String body;
+        private final String error;
+
+        private MultiResult(int index, String id, String body, String error) {
+            this.index = index;
+            this.id = id;
+            this.body = body;
+            this.error = error;
+        }
+
+        static MultiResult success(int index, String id, String body) {
+            return new MultiResult(index, id, body, null);
+        }
+
+        static MultiResult failure(int index, String id, String error) {
+            return new MultiResult(index, id, null, error);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getError() {
+            return error;
+        }
     }
 
     @Bean
@@ -120,6 +301,7 @@ public class MyService {
         return te;
     }
 
+    // DeferredResult와 ListenableFuture를 반환하는 컨트롤러이므로 서블릿(스프링 MVC) 스택으로 실행한다. (application.yml의 spring.main.web-application-type)
     public static void main(String[] args) {
         SpringApplication.run(MyService.class, args);
     }
@@ -1,13 +1,30 @@
 package com.roy.webflux.mvc.controller;
 
+import com.roy.webflux.mvc.controller.remote.Deadline;
+import com.roy.webflux.mvc.controller.simulator.RemoteSimulator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.embedded.tomcat.TomcatReactiveWebServerFactory;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
@@ -18,24 +35,106 @@ public class RemoteService {
         return new TomcatReactiveWebServerFactory();
     }
 
+    // remote.simulator.mode가 blocking이면 기존과 같이 요청 스레드에서 2초 동안 sleep한다.
+    // timer이면 RemoteSimulator가 공유 타이머로 응답을 예약하기 때문에 기다리는 동안 스레드를 점유하지 않는다.
+    // timer 모드에서는 /simulator/routes로 라우트마다 응답 시간 분포와 오류, 타임아웃, 느린 본문을 설정할 수 있다.
+    // 라우트 이름은 remote-service-1, remote-service-1-batch, remote-service-2이다.
+    // 호출한 쪽이 Deadline.HEADER 헤더로 남은 시간을 보내면 그 시간까지만 일하고, 지나면 504(Gateway Timeout)로 응답한다.
+    // 이미 남은 시간이 없다면 일을 시작하지 않고 바로 504로 응답한다.
     @RestController
     public static class RemoteController {
+        private static final MediaType TEXT_PLAIN_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+        private final RemoteSimulator simulator;
+        private final boolean timerMode;
+
+        public RemoteController(RemoteSimulator simulator,
+                                @Value("${remote.simulator.mode:blocking}") String mode) {
+            this.simulator = simulator;
+            this.timerMode = "timer".equalsIgnoreCase(mode);
+        }
+
         @GetMapping("/remote-service-1/{request}")
-        public String service1(@PathVariable String request) throws InterruptedException {
-            TimeUnit.SECONDS.sleep(2);
-            return String.format("remote-service-1: %s", request);
+        public Mono<Void> service1(@PathVariable String request,
+                                   @RequestHeader(value = Deadline.HEADER, required = false) Long budget,
+                                   ServerHttpResponse response) {
+            return write(response, respond("remote-service-1", String.format("remote-service-1: %s", request), budget));
+        }
+
+        // 여러 요청을 한 번에 처리하는 배치 API다. 요청 id 목록을 받아서 id별 결과를 반환한다.
+        // 단건 API와 같이 2초가 걸리지만 요청의 수와 관계없이 한 번만 기다린다.
+        @PostMapping("/remote-service-1/batch")
+        public Mono<Map<String, String>> batchService1(@RequestBody List<String> requests,
+                                                      @RequestHeader(value = Deadline.HEADER, required = false) Long budget) {
+            Map<String, String> results = new LinkedHashMap<>();
+            for (String request : requests) {
+                results.put(request, String.format("remote-service-1: %s", request));
+            }
+            if (timerMode) {
+                return withinBudget(simulator.respondValue("remote-service-1-batch", results).flux(), budget).next();
+            }
+            return Mono.fromCallable(() -> sleepWithinBudget(results, budget));
         }
 
         @GetMapping("/remote-service-2/{request}")
-        public String service2(@PathVariable String request) throws InterruptedException {
-            TimeUnit.SECONDS.sleep(2);
-            return String.format("remote-service-2: %s", request);
+        public Mono<Void> service2(@PathVariable String request,
+                                   @RequestHeader(value = Deadline.HEADER, required = false) Long budget,
+                                   ServerHttpResponse response) {
+            return write(response, respond("remote-service-2", String.format("remote-service-2: %s", request), budget));
+        }
+
+        // Flux<String>을 그대로 반환하면 text/plain 응답은 writeWith로 쓰이고 서블릿 응답은 Flux가 끝날 때 한 번만 flush된다.
+        // 그러면 느린 본문의 조각이 톰캣의 버퍼에 쌓였다가 한꺼번에 전송되어 클라이언트에게는 응답 시간이 늘어난 것으로만 보인다.
+        // 조각마다 flush하는 writeAndFlushWith로 직접 써서 조각이 만들어지는 대로 클라이언트에 도착하도록 한다.
+        // 첫 조각을 쓰기 전에 실패하면 응답이 아직 커밋되지 않았으므로 오류는 기존과 같이 상태 코드로 응답한다.
+        private Mono<Void> write(ServerHttpResponse response, Flux<String> body) {
+            response.getHeaders().setContentType(TEXT_PLAIN_UTF8);
+            return response.writeAndFlushWith(body.map(chunk ->
+                    Mono.just(response.bufferFactory().wrap(chunk.getBytes(StandardCharsets.UTF_8)))));
+        }
+
+        private Flux<String> respond(String route, String body, Long budget) {
+            if (timerMode) {
+                return withinBudget(simulator.respond(route, body), budget);
+            }
+            return Mono.fromCallable(() -> sleepWithinBudget(body, budget)).flux();
+        }
+
+        private <T> Flux<T> withinBudget(Flux<T> response, Long budget) {
+            if (budget == null) {
+                return response;
+            }
+            if (budget <= 0) {
+                return Flux.error(deadlineExceeded());
+            }
+            return response.timeout(Duration.ofMillis(budget), Flux.error(deadlineExceeded()));
+        }
+
+        // blocking 모드에서는 남은 시간이 2초보다 짧으면 남은 시간만큼만 기다린 뒤 포기한다.
+        private <T> T sleepWithinBudget(T result, Long budget) throws InterruptedException {
+            long sleep = TimeUnit.SECONDS.toMillis(2);
+            if (budget != null && budget < sleep) {
+                TimeUnit.MILLISECONDS.sleep(Math.max(0, budget));
+                throw deadlineExceeded();
+            }
+            TimeUnit.MILLISECONDS.sleep(sleep);
+            return result;
+        }
+
+        private static ResponseStatusException deadlineExceeded() {
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded");
         }
     }
 
+    // spring-boot-starter-web이 classpath에 있으면 기본값이 서블릿(스프링 MVC)이므로 리액티브 스택으로 실행하도록 직접 지정한다.
+    // Mono를 반환하는 엔드포인트와 ServerHttpResponse로 조각을 나누어 쓰는 느린 본문은 리액티브 스택에서만 의도대로 동작한다.
     public static void main(String[] args) {
+        System.setProperty("spring.main.web-application-type", "reactive");
         System.setProperty("server.port", "8081");
         System.setProperty("server.tomcat.max-threads", "1000");
+        // timer 모드에서 10만 개의 요청이 동시에 대기할 수 있도록 연결 수를 늘린다. (OS의 파일 디스크립터 제한도 함께 늘려야 한다)
+        System.setProperty("server.tomcat.max-connections", "100000");
+        System.setProperty("server.tomcat.accept-count", "10000");
         SpringApplication.run(RemoteService.class, args);
     }
 
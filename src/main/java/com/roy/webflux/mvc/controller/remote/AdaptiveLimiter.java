@@ -0,0 +1,208 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// 응답 시간(RTT)을 보고 동시에 보낼 수 있는 호출 수(limit)를 스스로 조절하는 limiter다. (gradient 방식)
+// 부하가 없을 때의 최소 응답 시간(minRtt)과 방금 측정한 응답 시간을 비교하여
+// 응답 시간이 minRtt * tolerance보다 늘어나면 상대 서버에 요청이 쌓이고 있다고 보고 limit을 줄이고, 그렇지 않으면 sqrt(limit)만큼 늘린다.
+// limit 안에서 사용 중인 호출이 절반도 되지 않을 때는 limit을 늘리지 않는다. (부하가 없어서 빨랐던 것이므로)
+// 상대 서버의 기본 응답 시간이 바뀌는 경우를 대비하여 probeInterval개의 측정마다 minRtt를 최근 구간의 최솟값으로 다시 정한다.
+// limit을 넘어선 호출은 최대 maxQueue개까지 대기하고 그보다 많으면 바로 RejectedExecutionException으로 실패한다.
+// 실패하거나 취소된 호출은 응답 시간을 알 수 없으므로 limit 계산에 사용하지 않고 자리만 반납한다.
+public class AdaptiveLimiter {
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final int probeInterval;
+    private final LongSupplier clock;
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private double limit;
+    private int inFlight;
+    private long minRtt = Long.MAX_VALUE;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private long lastRtt;
+    private long samples;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, int probeInterval) {
+        this(name, initialLimit, minLimit, maxLimit, maxQueue, probeInterval, System::nanoTime);
+    }
+
+    // 테스트에서 응답 시간을 직접 정할 수 있도록 시계(나노초)를 받는다.
+    AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, int probeInterval, LongSupplier clock) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.probeInterval = probeInterval;
+        this.clock = clock;
+    }
+
+    // 자리를 얻은 뒤에 call을 구독하고, call이 끝나면(성공, 실패, 취소) 자리를 반납한다.
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.<Permit>create(this::acquire)
+                .flatMap(permit -> call.get()
+                        .doOnSuccess(value -> permit.release(true))
+                        .doFinally(signal -> permit.release(false)));
+    }
+
+    private void acquire(MonoSink<Permit> sink) {
+        Waiter waiter = new Waiter(sink);
+        boolean granted = false;
+        boolean rejected = false;
+        synchronized (this) {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                granted = waiter.reserve();
+            } else if (waiters.size() < maxQueue) {
+                waiters.add(waiter);
+                queued.increment();
+            } else {
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            dropped.increment();
+            sink.error(new RejectedExecutionException("Concurrency limit exceeded: " + name));
+            return;
+        }
+        sink.onCancel(waiter::cancel);
+        if (granted) {
+            waiter.grant();
+        }
+    }
+
+    private void release(long rttNanos, int inFlightAtStart, boolean sampled) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (sampled) {
+                sample(rttNanos, inFlightAtStart);
+            }
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                if (waiter.reserve()) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    private void sample(long rttNanos, int inFlightAtStart) {
+        lastRtt = rttNanos;
+        minRtt = Math.min(minRtt, rttNanos);
+        windowMinRtt = Math.min(windowMinRtt, rttNanos);
+        if (++samples % probeInterval == 0) {
+            minRtt = windowMinRtt;
+            windowMinRtt = Long.MAX_VALUE;
+        }
+        if (inFlightAtStart * 2 < limit && rttNanos <= minRtt * TOLERANCE) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, minRtt * TOLERANCE / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("limit", (int) limit);
+        snapshot.put("inFlight", inFlight);
+        snapshot.put("queueDepth", waiters.size());
+        snapshot.put("accepted", accepted.sum());
+        snapshot.put("queued", queued.sum());
+        snapshot.put("dropped", dropped.sum());
+        snapshot.put("minRttMillis", minRtt == Long.MAX_VALUE ? 0 : minRtt / 1_000_000);
+        snapshot.put("lastRttMillis", lastRtt / 1_000_000);
+        return snapshot;
+    }
+
+    // 대기 중인 호출이다. 자리를 얻기 전에 취소되면 대기열에서 빠진 것으로 보고, 자리를 얻은 뒤에 취소되면 자리를 반납한다.
+    private final class Waiter {
+        private static final int WAITING = 0;
+        private static final int RESERVED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Permit> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Permit permit;
+        private volatile boolean cancelled;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        private boolean reserve() {
+            return state.compareAndSet(WAITING, RESERVED);
+        }
+
+        private void grant() {
+            int inFlightAtStart;
+            synchronized (AdaptiveLimiter.this) {
+                inFlightAtStart = inFlight;
+            }
+            Permit permit = new Permit(inFlightAtStart);
+            this.permit = permit;
+            if (cancelled) {
+                permit.release(false);
+                return;
+            }
+            accepted.increment();
+            sink.success(permit);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                synchronized (AdaptiveLimiter.this) {
+                    waiters.remove(this);
+                }
+                return;
+            }
+            Permit permit = this.permit;
+            if (permit != null) {
+                permit.release(false);
+            }
+        }
+    }
+
+    private final class Permit {
+        private final long startedAt = clock.getAsLong();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        private void release(boolean sampled) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.release(clock.getAsLong() - startedAt, inFlightAtStart, sampled);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import java.util.concurrent.TimeUnit;
+
+// 요청 하나에 주어진 시간 예산이다.
+// 요청이 들어오면 X-Request-Budget-Ms 헤더 또는 기본값으로 Deadline을 만들고, 이후의 모든 호출은 남은 시간을 같은 헤더에 담아서 전달한다.
+// 서버마다 시계가 다를 수 있으므로 절대 시각이 아니라 남은 시간(ms)을 전달하고, 받은 쪽은 자신의 System.nanoTime 기준으로 다시 만든다.
+// 남은 시간이 없으면 호출하지 않고 바로 DeadlineExceededException으로 실패한다.
+// none()은 시간 제한이 없는 Deadline이며 헤더를 전달하지 않는다.
+public final class Deadline {
+    public static final String HEADER = "X-Request-Budget-Ms";
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+    }
+
+    // 헤더 값이 없으면 defaultMillis를 사용하고, 헤더 값이 maxMillis보다 크면 maxMillis로 제한한다.
+    public static Deadline fromHeader(Long budgetMillis, long defaultMillis, long maxMillis) {
+        return after(Math.min(budgetMillis == null ? defaultMillis : budgetMillis, maxMillis));
+    }
+
+    public boolean isBounded() {
+        return this != NONE;
+    }
+
+    public long remainingMillis() {
+        if (!isBounded()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return remainingMillis() == 0;
+    }
+
+    public void check(String operation) {
+        if (isExpired()) {
+            throw new DeadlineExceededException(operation);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// 요청의 시간 예산(Deadline)을 모두 사용하여 더 이상 진행하지 않는 경우에 발생한다.
+// 컨트롤러나 DeferredResult의 에러로 전달되면 RemoteService와 같이 504(Gateway Timeout)로 응답한다.
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(String operation) {
+        super("Deadline exceeded: " + operation);
+    }
+}
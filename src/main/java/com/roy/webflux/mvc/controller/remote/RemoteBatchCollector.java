@@ -0,0 +1,109 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import com.roy.webflux.util.Histogram;
+import com.roy.webflux.util.MicroBatchTrigger;
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 동시에 들어온 remote-service-1 단건 호출을 모아서 /remote-service-1/batch 한 번으로 보낸다.
+// 요청은 큐에 쌓이고 MicroBatchTrigger가 remote.batch.max-size개가 모이거나 첫 요청이 remote.batch.max-wait-ms 동안 기다리면 flush한다.
+// flush할 때는 큐에 쌓인 요청을 max-size개씩 나누어 배치 요청을 보내고, 응답으로 받은 결과를 각 요청의 future에 나누어 전달한다.
+// 같은 배치 안에서 같은 id가 여러 번 요청되면 한 번만 보내고 결과를 함께 사용한다.
+// 배치 요청이 실패하면 해당 배치의 모든 요청이 실패하고, 응답에 결과가 없는 id는 해당 요청만 실패한다.
+// 배치 크기와 대기 시간의 분포는 MicroBatchTrigger가, 배치 요청의 응답 시간은 latency 히스토그램이 기록한다.
+@Component
+public class RemoteBatchCollector {
+    private static final String BATCH_URL = "http://localhost:8081/remote-service-1/batch";
+    private static final ParameterizedTypeReference<Map<String, String>> BATCH_RESPONSE =
+            new ParameterizedTypeReference<Map<String, String>>() {};
+
+    private final Function<List<String>, Mono<Map<String, String>>> batchCall;
+    private final int maxSize;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final MicroBatchTrigger trigger;
+    private final Histogram latencies = new Histogram();
+
+    @Autowired
+    public RemoteBatchCollector(RemoteClient remoteClient,
+                                @Value("${remote.batch.max-size:50}") int maxSize,
+                                @Value("${remote.batch.max-wait-ms:10}") long maxWaitMillis) {
+        this(ids -> remoteClient.post(BATCH_URL, ids, BATCH_RESPONSE), maxSize, maxWaitMillis, SharedTimer.get());
+    }
+
+    // 테스트에서 배치 요청과 타이머를 직접 제어할 수 있도록 받는다.
+    RemoteBatchCollector(Function<List<String>, Mono<Map<String, String>>> batchCall, int maxSize, long maxWaitMillis, Timer timer) {
+        this.batchCall = batchCall;
+        this.maxSize = maxSize;
+        this.trigger = new MicroBatchTrigger(maxSize, maxWaitMillis, timer, this::flush);
+    }
+
+    public CompletableFuture<String> submit(String id) {
+        Pending pending = new Pending(id);
+        queue.add(pending);
+        trigger.arrived();
+        return pending.future;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>(trigger.snapshot());
+        snapshot.put("queued", queue.size());
+        snapshot.put("batchLatencyMillis", latencies.snapshot());
+        return snapshot;
+    }
+
+    private void flush() {
+        while (true) {
+            Map<String, List<Pending>> batch = new LinkedHashMap<>();
+            Pending pending;
+            while (batch.size() < maxSize && (pending = queue.poll()) != null) {
+                batch.computeIfAbsent(pending.id, id -> new ArrayList<>()).add(pending);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            send(batch);
+        }
+    }
+
+    private void send(Map<String, List<Pending>> batch) {
+        long startedAt = System.nanoTime();
+        batchCall.apply(new ArrayList<>(batch.keySet()))
+                .subscribe(results -> {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                    batch.forEach((id, waiters) -> {
+                        String result = results.get(id);
+                        for (Pending waiter : waiters) {
+                            if (result != null) {
+                                waiter.future.complete(result);
+                            } else {
+                                waiter.future.completeExceptionally(new IllegalStateException("No result for id: " + id));
+                            }
+                        }
+                    });
+                }, ex -> batch.values().forEach(waiters -> waiters.forEach(waiter -> waiter.future.completeExceptionally(ex))));
+    }
+
+    private static final class Pending {
+        private final String id;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Pending(String id) {
+            this.id = id;
+        }
+    }
+}
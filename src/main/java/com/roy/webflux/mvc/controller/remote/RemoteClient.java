@@ -0,0 +1,146 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.CompletableToListenableFutureAdapter;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// remote-service-* 호출에 사용하는 공유 HTTP 클라이언트다.
+// 이전에는 컨트롤러마다 Netty4ClientHttpRequestFactory(new NioEventLoopGroup(1))로 AsyncRestTemplate을 만들었다.
+// Netty4ClientHttpRequestFactory는 deprecated 되었고 요청마다 새로운 연결을 맺기 때문에
+// 동시 요청이 1,000개라면 매번 TCP 연결을 새로 맺고 끊으면서 연결 비용과 임시 포트가 계속 소모된다.
+// RemoteClient는 reactor-netty의 커넥션 풀을 사용하는 WebClient 하나를 모든 컨트롤러가 함께 사용한다.
+// remote.client.max-connections: 풀이 유지하는 최대 연결 수
+// remote.client.max-idle-ms: 이 시간 동안 사용되지 않은 연결은 닫는다.
+// remote.client.pending-acquire-max: 연결을 기다릴 수 있는 최대 요청 수, 넘어서면 바로 실패한다.
+// remote.client.pending-acquire-timeout-ms: 연결을 기다리는 최대 시간
+// remote.client.event-loops: 네트워크 I/O를 처리하는 이벤트 루프 스레드 수
+// 기존 코드가 ListenableFuture를 사용하고 있으므로 getForEntity는 ListenableFuture를 반환하고, 리액티브 코드에서는 get으로 Mono를 받아서 사용한다.
+// AsyncRestTemplate과 같이 4xx, 5xx 응답은 예외(WebClientResponseException)로 처리된다.
+// remote.limiter.enabled가 true이면 URL 템플릿(라우트)마다 AdaptiveLimiter를 두고 응답 시간에 따라 동시에 보내는 호출 수를 조절한다.
+// limit을 넘어선 호출은 remote.limiter.max-queue개까지 대기하고 그보다 많으면 RejectedExecutionException으로 바로 실패한다.
+// Deadline을 함께 전달하면 실제로 요청을 보내는 시점에 남은 시간을 확인하여 이미 지났다면 보내지 않고 바로 실패한다.
+// 남은 시간은 Deadline.HEADER 헤더로 전달되며 응답도 남은 시간까지만 기다린다. (limiter에서 대기한 시간도 예산에 포함된다)
+@Component
+public class RemoteClient implements DisposableBean {
+    private final ConnectionProvider connectionProvider;
+    private final LoopResources loopResources;
+    private final WebClient webClient;
+    private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Value("${remote.limiter.enabled:true}")
+    private boolean limiterEnabled;
+    @Value("${remote.limiter.initial-limit:100}")
+    private int initialLimit;
+    @Value("${remote.limiter.min-limit:10}")
+    private int minLimit;
+    @Value("${remote.limiter.max-limit:1000}")
+    private int maxLimit;
+    @Value("${remote.limiter.max-queue:1000}")
+    private int maxQueue;
+    @Value("${remote.limiter.probe-interval:500}")
+    private int probeInterval;
+
+    public RemoteClient(@Value("${remote.client.max-connections:1000}") int maxConnections,
+                        @Value("${remote.client.max-idle-ms:30000}") long maxIdleMillis,
+                        @Value("${remote.client.pending-acquire-max:5000}") int pendingAcquireMax,
+                        @Value("${remote.client.pending-acquire-timeout-ms:45000}") long pendingAcquireTimeoutMillis,
+                        @Value("${remote.client.event-loops:2}") int eventLoops) {
+        this.connectionProvider = ConnectionProvider.builder("remote-client")
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofMillis(maxIdleMillis))
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMillis))
+                .evictInBackground(Duration.ofMillis(maxIdleMillis))
+                .build();
+        this.loopResources = LoopResources.create("remote-client", eventLoops, true);
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .runOn(loopResources)
+                .keepAlive(true);
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    public <T> Mono<ResponseEntity<T>> get(String url, Class<T> responseType, Object... uriVariables) {
+        return get(Deadline.none(), url, responseType, uriVariables);
+    }
+
+    public <T> Mono<ResponseEntity<T>> get(Deadline deadline, String url, Class<T> responseType, Object... uriVariables) {
+        if (!deadline.isBounded()) {
+            Mono<ResponseEntity<T>> call = webClient.get()
+                    .uri(url, uriVariables)
+                    .retrieve()
+                    .toEntity(responseType);
+            return limited(url, call);
+        }
+        Mono<ResponseEntity<T>> call = Mono.defer(() -> {
+            long remaining = deadline.remainingMillis();
+            if (remaining == 0) {
+                return Mono.error(new DeadlineExceededException(url));
+            }
+            return webClient.get()
+                    .uri(url, uriVariables)
+                    .header(Deadline.HEADER, String.valueOf(remaining))
+                    .retrieve()
+                    .toEntity(responseType)
+                    .timeout(Duration.ofMillis(remaining), Mono.error(() -> new DeadlineExceededException(url)));
+        });
+        return Mono.defer(() -> deadline.isExpired() ? Mono.error(new DeadlineExceededException(url)) : limited(url, call));
+    }
+
+    public <T> Mono<T> post(String url, Object body, ParameterizedTypeReference<T> responseType) {
+        Mono<T> call = webClient.post()
+                .uri(url)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(responseType);
+        return limited(url, call);
+    }
+
+    public Map<String, Object> limiterSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        limiters.forEach((route, limiter) -> snapshot.put(route, limiter.snapshot()));
+        return snapshot;
+    }
+
+    private <T> Mono<T> limited(String route, Mono<T> call) {
+        if (!limiterEnabled) {
+            return call;
+        }
+        return limiters.computeIfAbsent(route, this::newLimiter).execute(() -> call);
+    }
+
+    private AdaptiveLimiter newLimiter(String route) {
+        return new AdaptiveLimiter(route, initialLimit, minLimit, maxLimit, maxQueue, probeInterval);
+    }
+
+    public <T> ListenableFuture<ResponseEntity<T>> getForEntity(String url, Class<T> responseType, Object... uriVariables) {
+        return getForEntity(Deadline.none(), url, responseType, uriVariables);
+    }
+
+    public <T> ListenableFuture<ResponseEntity<T>> getForEntity(Deadline deadline, String url, Class<T> responseType, Object... uriVariables) {
+        return new CompletableToListenableFutureAdapter<>(get(deadline, url, responseType, uriVariables).toFuture());
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+        loopResources.disposeLater().block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,158 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.CompletableToListenableFutureAdapter;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// remote-service의 응답은 같은 {request}에 대해 항상 같으므로 RemoteClient 앞에 두는 비동기 캐시다.
+// 값이 아니라 응답을 기다리는 future를 저장하기 때문에 캐시에 없는 같은 키로 동시에 요청하더라도 remote-service는 한 번만 호출된다.
+// 실패한 future는 캐시에서 자동으로 제거되므로 일시적인 오류가 캐시되지 않는다.
+// remote.cache.ttl-ms: 저장된 뒤 이 시간이 지나면 만료된다.
+// remote.cache.maximum-weight: 키와 응답 본문의 길이를 합한 값(weight)의 최대치, 넘어서면 오래 사용되지 않은 항목부터 제거한다.
+// Caffeine은 W-TinyLFU로 새로운 항목의 저장 여부를 결정한다. 자주 조회된 항목보다 사용 빈도가 낮은 새로운 항목은 저장되지 않기 때문에
+// 한 번씩만 조회되는 키가 대량으로 들어오더라도(scan) 자주 조회되는 항목이 밀려나지 않는다.
+// ListenableFuture를 사용하는 MVC 코드는 getForEntity를, 리액티브 코드는 getBody를 사용한다.
+// 호출한 쪽에는 캐시된 future의 복사본을 반환하므로 호출자가 취소하더라도 캐시된 응답에는 영향이 없다.
+// 다만 아직 응답을 기다리는 중에 복사본을 받은 모든 호출자가 취소하면 원격 호출도 취소하여 커넥션을 바로 반환한다.
+// 취소된 호출은 실패한 future와 같이 캐시에서 제거되므로 이후의 요청은 다시 원격 호출을 보낸다.
+@Component
+public class RemoteResponseCache {
+    private final Loader loader;
+    private final AsyncCache<String, ResponseEntity<String>> cache;
+
+    @Autowired
+    public RemoteResponseCache(RemoteClient remoteClient,
+                               @Value("${remote.cache.ttl-ms:60000}") long ttlMillis,
+                               @Value("${remote.cache.maximum-weight:10000000}") long maximumWeight) {
+        this((deadline, url, uriVariables) -> remoteClient.get(deadline, url, String.class, uriVariables),
+                ttlMillis, maximumWeight, System::nanoTime, ForkJoinPool.commonPool());
+    }
+
+    // 테스트에서 원격 호출과 만료 시간, 항목 제거 시점을 직접 제어할 수 있도록 원격 호출과 시계(나노초), Caffeine의 정리 작업을 실행할 executor를 받는다.
+    RemoteResponseCache(Loader loader, long ttlMillis, long maximumWeight, LongSupplier clock, Executor executor) {
+        this.loader = loader;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .maximumWeight(maximumWeight)
+                .weigher((String key, ResponseEntity<String> response) -> key.length() + bodyLength(response))
+                .ticker(clock::getAsLong)
+                .executor(executor)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public ListenableFuture<ResponseEntity<String>> getForEntity(String url, Object... uriVariables) {
+        return getForEntity(Deadline.none(), url, uriVariables);
+    }
+
+    // 캐시에 없어서 원격 호출을 보내는 경우에는 deadline의 남은 시간을 RemoteClient와 같이 Deadline.HEADER로 전달한다.
+    // 같은 키를 기다리는 다른 호출자는 처음 호출을 보낸 요청의 예산을 함께 사용한다.
+    public ListenableFuture<ResponseEntity<String>> getForEntity(Deadline deadline, String url, Object... uriVariables) {
+        return new CompletableToListenableFutureAdapter<>(lookup(deadline, url, uriVariables));
+    }
+
+    public Mono<String> getBody(String url, Object... uriVariables) {
+        return Mono.defer(() -> {
+                    CompletableFuture<ResponseEntity<String>> future = lookup(Deadline.none(), url, uriVariables);
+                    return Mono.fromFuture(future).doOnCancel(() -> future.cancel(true));
+                })
+                .map(ResponseEntity::getBody);
+    }
+
+    public Map<String, Object> snapshot() {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("size", cache.synchronous().estimatedSize());
+        snapshot.put("hits", stats.hitCount());
+        snapshot.put("misses", stats.missCount());
+        snapshot.put("hitRate", stats.hitRate());
+        snapshot.put("evictions", stats.evictionCount());
+        snapshot.put("evictionWeight", stats.evictionWeight());
+        snapshot.put("loadFailures", stats.loadFailureCount());
+        return snapshot;
+    }
+
+    private CompletableFuture<ResponseEntity<String>> lookup(Deadline deadline, String url, Object... uriVariables) {
+        String key = UriComponentsBuilder.fromUriString(url).buildAndExpand(uriVariables).toUriString();
+        while (true) {
+            CompletableFuture<ResponseEntity<String>> cached =
+                    cache.get(key, (k, executor) -> new Load(loader.load(deadline, url, uriVariables).toFuture()));
+            if ((cached.isDone() && !cached.isCompletedExceptionally()) || !(cached instanceof Load)) {
+                return cached.copy();
+            }
+            // 모든 호출자가 취소하여 원격 호출이 취소된 Load는 캐시에서 제거되기 전에 잠시 보일 수 있으므로 합류하지 않고 다시 조회한다.
+            Load load = (Load) cached;
+            if (load.join()) {
+                CompletableFuture<ResponseEntity<String>> copy = load.copy();
+                copy.whenComplete((response, ex) -> {
+                    if (copy.isCancelled()) {
+                        load.leave();
+                    }
+                });
+                return copy;
+            }
+            cache.asMap().remove(key, load);
+        }
+    }
+
+    interface Loader {
+        Mono<ResponseEntity<String>> load(Deadline deadline, String url, Object... uriVariables);
+    }
+
+    // 캐시에 저장되는 원격 호출의 결과다. waiters는 복사본을 받고 아직 취소하지 않은 호출자의 수다.
+    // 마지막 호출자가 취소하면 -1로 바꾸고 원격 호출(Mono.toFuture)을 취소하며, -1이 된 뒤에는 합류할 수 없으므로 새로운 호출을 기다리는 호출자가 생기지 않는다.
+    private static final class Load extends CompletableFuture<ResponseEntity<String>> {
+        private final CompletableFuture<ResponseEntity<String>> upstream;
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private Load(CompletableFuture<ResponseEntity<String>> upstream) {
+            this.upstream = upstream;
+            upstream.whenComplete((response, ex) -> {
+                if (ex == null) {
+                    complete(response);
+                } else {
+                    completeExceptionally(ex);
+                }
+            });
+        }
+
+        private boolean join() {
+            int current;
+            do {
+                current = waiters.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void leave() {
+            if (waiters.decrementAndGet() == 0 && !isDone() && waiters.compareAndSet(0, -1)) {
+                upstream.cancel(true);
+            }
+        }
+    }
+
+    private static int bodyLength(ResponseEntity<String> response) {
+        String body = response.getBody();
+        return body == null ? 0 : body.length();
+    }
+}
@@ -0,0 +1,27 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// remote-service 호출에 사용하는 공유 구성 요소의 상태를 보여준다.
+@RestController
+public class RemoteStatsController {
+    private final RemoteClient remoteClient;
+    private final RemoteResponseCache remoteResponseCache;
+
+    public RemoteStatsController(RemoteClient remoteClient, RemoteResponseCache remoteResponseCache) {
+        this.remoteClient = remoteClient;
+        this.remoteResponseCache = remoteResponseCache;
+    }
+
+    @GetMapping("/remote-client/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limiters", remoteClient.limiterSnapshot());
+        stats.put("cache", remoteResponseCache.snapshot());
+        return stats;
+    }
+}
@@ -1,5 +1,7 @@
 package com.roy.webflux.mvc.controller.service;
 
+import com.roy.webflux.mvc.controller.remote.Deadline;
+import com.roy.webflux.mvc.controller.remote.DeadlineExceededException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
@@ -8,9 +10,25 @@ import org.springframework.util.concurrent.ListenableFuture;
 @Service
 public class MyLogic {
 
-    @Async
+    // 문자열만 만드는 가벼운 작업이므로 myThreadPool의 스레드 하나로 옮기지 않고 HybridExecutor가 호출한 스레드에서 바로 실행한다.
+    // 작업이 느려져서 추정 비용이 async.hybrid.inline-threshold-us를 넘으면 그때부터 work-stealing 풀로 넘긴다.
+    @Async("myLogicWork")
     public ListenableFuture<String> work(String request) {
-        return new AsyncResult<>(String.format("asyncwork/%s", request));
+        return new AsyncResult<>(format(request));
+    }
+
+    // executor의 큐에서 기다리는 동안 요청의 시간 예산이 지났다면 작업을 실행하지 않고 바로 실패한다.
+    // 같은 객체의 work(request)를 호출하면 프록시를 거치지 않아 @Async가 적용되지 않으므로 결과를 직접 만든다.
+    @Async("myLogicWork")
+    public ListenableFuture<String> work(String request, Deadline deadline) {
+        if (deadline.isExpired()) {
+            return AsyncResult.forExecutionException(new DeadlineExceededException("MyLogic.work"));
+        }
+        return new AsyncResult<>(format(request));
+    }
+
+    private String format(String request) {
+        return String.format("asyncwork/%s", request);
     }
 
 }
@@ -0,0 +1,81 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// 가상 응답 시간의 분포다. type에 따라 아래의 값을 사용한다.
+// fixed: 항상 millis
+// uniform: min ~ max 사이의 균등 분포
+// log-normal: 중앙값이 median이고 ln(응답 시간)의 표준편차가 sigma인 로그 정규 분포, 실제 서비스의 응답 시간처럼 오른쪽 꼬리가 길다.
+// percentiles: 실제로 측정한 백분위 값({"0.5": 20, "0.9": 80, "0.99": 400, "1.0": 1000})을 그대로 사용하며 백분위 사이는 선형으로 보간한다.
+@Getter
+@Setter
+public class LatencyDistribution {
+    public static final String FIXED = "fixed";
+    public static final String UNIFORM = "uniform";
+    public static final String LOG_NORMAL = "log-normal";
+    public static final String PERCENTILES = "percentiles";
+
+    private String type = FIXED;
+    private long millis;
+    private long min;
+    private long max;
+    private long median;
+    private double sigma;
+    private TreeMap<Double, Long> percentiles = new TreeMap<>();
+
+    public static LatencyDistribution fixed(long millis) {
+        LatencyDistribution distribution = new LatencyDistribution();
+        distribution.setMillis(millis);
+        return distribution;
+    }
+
+    public long sample() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (type) {
+            case FIXED:
+                return millis;
+            case UNIFORM:
+                return max > min ? random.nextLong(min, max + 1) : min;
+            case LOG_NORMAL:
+                return Math.round(Math.exp(Math.log(Math.max(1, median)) + sigma * random.nextGaussian()));
+            case PERCENTILES:
+                return samplePercentiles(random.nextDouble());
+            default:
+                throw new IllegalStateException("Unknown latency type: " + type);
+        }
+    }
+
+    void validate() {
+        switch (type) {
+            case FIXED:
+            case UNIFORM:
+            case LOG_NORMAL:
+                return;
+            case PERCENTILES:
+                if (percentiles.isEmpty() || percentiles.firstKey() < 0 || percentiles.lastKey() > 1) {
+                    throw new IllegalArgumentException("Percentiles must be between 0 and 1");
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown latency type: " + type);
+        }
+    }
+
+    long samplePercentiles(double p) {
+        Map.Entry<Double, Long> upper = percentiles.ceilingEntry(p);
+        if (upper == null) {
+            return percentiles.lastEntry().getValue();
+        }
+        Map.Entry<Double, Long> lower = percentiles.lowerEntry(upper.getKey());
+        if (lower == null) {
+            return upper.getValue();
+        }
+        double ratio = (p - lower.getKey()) / (upper.getKey() - lower.getKey());
+        return Math.round(lower.getValue() + ratio * (upper.getValue() - lower.getValue()));
+    }
+}
@@ -0,0 +1,181 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// RemoteService의 가상 응답을 만드는 시뮬레이터다.
+// TimeUnit.SECONDS.sleep(2)로 응답 시간을 흉내내면 요청 하나가 스레드 하나를 점유하기 때문에 부하 테스트에서 RemoteService가 먼저 한계에 도달한다.
+// 시뮬레이터는 공유 타이머(SharedTimer)에 응답을 예약하고 바로 반환하기 때문에 기다리는 동안 어떤 스레드도 점유하지 않는다.
+// 동시에 10만 개의 요청이 대기하더라도 필요한 것은 타이머에 등록된 작업과 연결뿐이다.
+// 라우트마다 RouteProfile로 응답 시간 분포와 오류, 타임아웃, 느린 본문을 설정하며 /simulator/routes로 실행 중에 변경할 수 있다.
+// 설정하지 않은 라우트는 remote.simulator.default-latency-ms 동안 기다린 뒤 정상 응답한다.
+// 클라이언트가 연결을 끊으면 예약된 응답도 취소된다.
+// 타이머 스레드는 하나뿐이므로 응답을 보내는 일(직렬화, 서블릿 쓰기)까지 타이머 스레드에서 하면 10만 개의 응답이 한 스레드에서 차례로 처리되어
+// 다음 tick이 늦어지고 시뮬레이터가 만들려는 응답 시간 분포가 틀어진다. 타이머는 시간이 되었다는 신호만 보내고 응답은 Schedulers.parallel()에서 보낸다.
+@Component
+public class RemoteSimulator {
+    private final ConcurrentMap<String, RouteProfile> routes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RouteStats> stats = new ConcurrentHashMap<>();
+    private final long defaultLatencyMillis;
+    private final Timer timer;
+
+    @Autowired
+    public RemoteSimulator(@Value("${remote.simulator.default-latency-ms:2000}") long defaultLatencyMillis) {
+        this(defaultLatencyMillis, SharedTimer.get());
+    }
+
+    // 테스트에서 응답 시간을 직접 진행시킬 수 있도록 타이머를 받는다.
+    RemoteSimulator(long defaultLatencyMillis, Timer timer) {
+        this.defaultLatencyMillis = defaultLatencyMillis;
+        this.timer = timer;
+    }
+
+    public Flux<String> respond(String route, String body) {
+        RouteProfile profile = profile(route);
+        RouteStats routeStats = stats.computeIfAbsent(route, key -> new RouteStats());
+        Outcome outcome = routeStats.pick(profile, true);
+        long latency = profile.getLatency().sample();
+        Flux<String> response;
+        if (outcome == Outcome.SLOW_BODY) {
+            response = Flux.fromArray(chunks(body, profile.getSlowBodyChunks()))
+                    .concatMap(chunk -> delay(profile.getSlowBodyChunkDelayMs()).thenReturn(chunk))
+                    .delaySubscription(delay(latency));
+        } else {
+            response = respond(outcome, profile, latency, body).flux();
+        }
+        return routeStats.track(response);
+    }
+
+    // 본문을 나누어 보낼 수 없는 JSON 응답에 사용한다. 느린 본문은 정상 응답으로 처리하며 slowBodies에도 세지 않는다.
+    public <T> Mono<T> respondValue(String route, T value) {
+        RouteProfile profile = profile(route);
+        RouteStats routeStats = stats.computeIfAbsent(route, key -> new RouteStats());
+        Outcome outcome = routeStats.pick(profile, false);
+        return routeStats.track(respond(outcome, profile, profile.getLatency().sample(), value).flux()).next();
+    }
+
+    private <T> Mono<T> respond(Outcome outcome, RouteProfile profile, long latency, T value) {
+        switch (outcome) {
+            case ERROR:
+                return Mono.<T>error(new ResponseStatusException(HttpStatus.valueOf(profile.getErrorStatus()), "Simulated error"))
+                        .delaySubscription(delay(latency));
+            case TIMEOUT:
+                return Mono.never();
+            default:
+                return delay(latency).thenReturn(value);
+        }
+    }
+
+    public RouteProfile profile(String route) {
+        return routes.getOrDefault(route, RouteProfile.fixed(defaultLatencyMillis));
+    }
+
+    public Map<String, RouteProfile> profiles() {
+        return new LinkedHashMap<>(routes);
+    }
+
+    public void program(String route, RouteProfile profile) {
+        profile.validate();
+        routes.put(route, profile);
+    }
+
+    public void reset(String route) {
+        routes.remove(route);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        stats.forEach((route, routeStats) -> snapshot.put(route, routeStats.snapshot()));
+        return snapshot;
+    }
+
+    // 공유 타이머로 millis 뒤에 완료되는 Mono다. 구독이 취소되면 예약된 작업도 취소한다.
+    // 완료 신호는 publishOn으로 Schedulers.parallel()의 스레드에 넘겨서 이후의 처리가 타이머 스레드를 점유하지 않도록 한다.
+    private Mono<Void> delay(long millis) {
+        if (millis <= 0) {
+            return Mono.empty();
+        }
+        return Mono.<Void>create(sink -> {
+                    Timeout timeout = timer.newTimeout(t -> sink.success(), millis, TimeUnit.MILLISECONDS);
+                    sink.onCancel(timeout::cancel);
+                })
+                .publishOn(Schedulers.parallel());
+    }
+
+    private static String[] chunks(String body, int count) {
+        int size = Math.max(1, (body.length() + count - 1) / count);
+        int length = (body.length() + size - 1) / size;
+        String[] chunks = new String[Math.max(1, length)];
+        if (body.isEmpty()) {
+            chunks[0] = body;
+            return chunks;
+        }
+        for (int i = 0; i < length; i++) {
+            chunks[i] = body.substring(i * size, Math.min(body.length(), (i + 1) * size));
+        }
+        return chunks;
+    }
+
+    private enum Outcome {
+        OK, ERROR, TIMEOUT, SLOW_BODY
+    }
+
+    private static final class RouteStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder slowBodies = new LongAdder();
+
+        private Outcome pick(RouteProfile profile, boolean slowBodyAllowed) {
+            requests.increment();
+            double dice = ThreadLocalRandom.current().nextDouble();
+            if ((dice -= profile.getErrorRate()) < 0) {
+                errors.increment();
+                return Outcome.ERROR;
+            }
+            if ((dice -= profile.getTimeoutRate()) < 0) {
+                timeouts.increment();
+                return Outcome.TIMEOUT;
+            }
+            if (slowBodyAllowed && dice - profile.getSlowBodyRate() < 0) {
+                slowBodies.increment();
+                return Outcome.SLOW_BODY;
+            }
+            return Outcome.OK;
+        }
+
+        private <T> Flux<T> track(Flux<T> response) {
+            return response
+                    .doOnSubscribe(subscription -> inFlight.increment())
+                    .doFinally(signal -> inFlight.decrement());
+        }
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("requests", requests.sum());
+            snapshot.put("inFlight", inFlight.sum());
+            snapshot.put("errors", errors.sum());
+            snapshot.put("timeouts", timeouts.sum());
+            snapshot.put("slowBodies", slowBodies.sum());
+            return snapshot;
+        }
+    }
+}
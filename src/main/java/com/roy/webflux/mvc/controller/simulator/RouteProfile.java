@@ -0,0 +1,43 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.http.HttpStatus;
+
+// 라우트 하나의 가상 응답 설정이다.
+// 요청마다 errorRate의 확률로 errorStatus 오류, timeoutRate의 확률로 응답하지 않음, slowBodyRate의 확률로 본문을 느리게 전송한다.
+// 응답 시간(latency)이 지난 뒤에 결과를 보내며 느린 본문은 slowBodyChunks개로 나누어 slowBodyChunkDelayMs 간격으로 보낸다.
+@Getter
+@Setter
+public class RouteProfile {
+    private LatencyDistribution latency = LatencyDistribution.fixed(2000);
+    private double errorRate;
+    private int errorStatus = 500;
+    private double timeoutRate;
+    private double slowBodyRate;
+    private int slowBodyChunks = 10;
+    private long slowBodyChunkDelayMs = 200;
+
+    public static RouteProfile fixed(long millis) {
+        RouteProfile profile = new RouteProfile();
+        profile.setLatency(LatencyDistribution.fixed(millis));
+        return profile;
+    }
+
+    void validate() {
+        if (latency == null) {
+            throw new IllegalArgumentException("Latency is required");
+        }
+        latency.validate();
+        if (errorRate < 0 || timeoutRate < 0 || slowBodyRate < 0 || errorRate + timeoutRate + slowBodyRate > 1) {
+            throw new IllegalArgumentException("Fault rates must be non-negative and add up to at most 1");
+        }
+        HttpStatus status = HttpStatus.resolve(errorStatus);
+        if (status == null || !status.isError()) {
+            throw new IllegalArgumentException("Error status must be 4xx or 5xx");
+        }
+        if (slowBodyChunks < 1) {
+            throw new IllegalArgumentException("Slow body needs at least one chunk");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+// 실행 중에 시뮬레이터의 라우트 설정을 조회하고 변경한다.
+// PUT /simulator/routes/remote-service-1
+// {"latency": {"type": "log-normal", "median": 200, "sigma": 0.5}, "errorRate": 0.01, "timeoutRate": 0.001}
+@RestController
+public class SimulatorController {
+    private final RemoteSimulator simulator;
+
+    public SimulatorController(RemoteSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    @GetMapping("/simulator/routes")
+    public Map<String, RouteProfile> routes() {
+        return simulator.profiles();
+    }
+
+    @GetMapping("/simulator/routes/{route}")
+    public RouteProfile route(@PathVariable String route) {
+        return simulator.profile(route);
+    }
+
+    @PutMapping("/simulator/routes/{route}")
+    public RouteProfile program(@PathVariable String route, @RequestBody RouteProfile profile) {
+        try {
+            simulator.program(route, profile);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return profile;
+    }
+
+    @DeleteMapping("/simulator/routes/{route}")
+    public RouteProfile reset(@PathVariable String route) {
+        simulator.reset(route);
+        return simulator.profile(route);
+    }
+
+    @GetMapping("/simulator/stats")
+    public Map<String, Object> stats() {
+        return simulator.snapshot();
+    }
+}
@@ -1,9 +1,14 @@
 package com.roy.webflux.practice;
 
+import com.roy.webflux.executor.ExecutorController;
+import com.roy.webflux.executor.HybridExecutorConfig;
+import com.roy.webflux.mvc.controller.remote.RemoteClient;
+import com.roy.webflux.mvc.controller.remote.RemoteResponseCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Service;
@@ -12,12 +17,14 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @EnableAsync
 @RestController
 @SpringBootApplication
+@Import({RemoteClient.class, RemoteResponseCache.class, HybridExecutorConfig.class, ExecutorController.class})
 public class WebFluxController {
 
     private final static String URL_1 = "http://localhost:8081/remote-service-1/{request}";
@@ -39,6 +46,22 @@ public class WebFluxController {
                 .flatMap(c -> c.bodyToMono(String.class));                            // Mono<String>
     }
 
+    // v2와 같은 호출이지만 remote-service의 응답을 캐시(RemoteResponseCache)에서 먼저 찾는다.
+    // 캐시에 없는 같은 요청이 동시에 들어오더라도 remote-service는 한 번만 호출된다.
+    @Autowired
+    private RemoteResponseCache remoteResponseCache;
+
+    @GetMapping("/webflux/practice/cached")
+    public Mono<String> restCached(int idx) {
+        return remoteResponseCache.getBody(URL_1, idx)
+                .flatMap(res1 -> remoteResponseCache.getBody(URL_2, res1));
+    }
+
+    @GetMapping("/webflux/practice/cached/stats")
+    public Map<String, Object> restCachedStats() {
+        return remoteResponseCache.snapshot();
+    }
+
     @Autowired
     private MyService myService;
 
@@ -54,15 +77,18 @@ public class WebFluxController {
                 .doOnNext(log::info);
     }
 
+    // spring-boot-starter-web이 classpath에 있으면 기본값이 서블릿(스프링 MVC)이므로 리액티브 스택으로 실행하도록 직접 지정한다.
     public static void main(String[] args) {
+        System.setProperty("spring.main.web-application-type", "reactive");
         System.setProperty("reactor.ipc.netty.workerCount", "2");
         System.setProperty("reactor.ipc.netty.pool.maxConnections", "2000");
         SpringApplication.run(WebFluxController.class, args);
     }
 
+    // 문자열만 만드는 가벼운 작업이므로 HybridExecutor가 호출한 스레드에서 바로 실행한다.
     @Service
     public static class MyService {
-        @Async
+        @Async("practiceWork")
         public CompletableFuture<String> work(String req) {
             return CompletableFuture.completedFuture(req + "/asyncwork");
         }
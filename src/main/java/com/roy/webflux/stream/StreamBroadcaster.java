@@ -0,0 +1,132 @@
+package com.roy.webflux.stream;
+
+import com.roy.webflux.util.SharedTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// 등록된 모든 ResponseBodyEmitter(SseEmitter 포함)에 같은 데이터를 보내는 브로드캐스터다.
+// 클라이언트마다 스레드를 만들어 send와 sleep을 반복하면 스트리밍 클라이언트 수만큼 스레드가 필요하다.
+// 브로드캐스터는 공유 타이머(SharedTimer) 하나로 주기적인 tick을 만들고, 실제 전송은 몇 개의 writer 스레드가 나누어 처리한다.
+// 클라이언트마다 가장 최근 값 하나와 전송 예약 여부만 가지고 있기 때문에 느린 클라이언트에게 보낼 데이터가 쌓이지 않는다.
+// 이전 전송이 끝나기 전에 새로운 값이 발행되면 기다리던 값은 버리고 가장 최근 값만 보낸다. (coalesced로 집계한다)
+// 한 클라이언트에 대한 전송은 동시에 하나만 실행되므로 send가 겹치지 않는다.
+// 클라이언트가 연결을 끊거나 타임아웃, 전송 오류가 발생하면 브로드캐스터에서 제거된다.
+public class StreamBroadcaster<T> {
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Executor writers;
+    private final Timer timer;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile Timeout ticker;
+
+    public StreamBroadcaster(Executor writers) {
+        this(writers, SharedTimer.get());
+    }
+
+    public StreamBroadcaster(Executor writers, Timer timer) {
+        this.writers = writers;
+        this.timer = timer;
+    }
+
+    public <E extends ResponseBodyEmitter> E register(E emitter) {
+        Client client = new Client(emitter);
+        clients.add(client);
+        emitter.onCompletion(() -> clients.remove(client));
+        emitter.onTimeout(() -> clients.remove(client));
+        emitter.onError(e -> clients.remove(client));
+        return emitter;
+    }
+
+    public void publish(T value) {
+        for (Client client : clients) {
+            client.offer(value);
+        }
+    }
+
+    // intervalMillis마다 tick이 만든 값을 모든 클라이언트에게 보낸다. 클라이언트가 없으면 tick을 호출하지 않는다.
+    public void schedule(long intervalMillis, Supplier<T> tick) {
+        ticker = timer.newTimeout(timeout -> {
+            if (!clients.isEmpty()) {
+                publish(tick.get());
+            }
+            if (!timeout.isCancelled() && ticker == timeout) {
+                schedule(intervalMillis, tick);
+            }
+        }, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        Timeout ticker = this.ticker;
+        this.ticker = null;
+        if (ticker != null) {
+            ticker.cancel();
+        }
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("clients", clients.size());
+        snapshot.put("sent", sent.sum());
+        snapshot.put("coalesced", coalesced.sum());
+        snapshot.put("failed", failed.sum());
+        return snapshot;
+    }
+
+    private final class Client {
+        private final ResponseBodyEmitter emitter;
+        private final AtomicReference<T> latest = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Client(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(T value) {
+            if (latest.getAndSet(value) != null) {
+                coalesced.increment();
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this::flush);
+            }
+        }
+
+        private void flush() {
+            try {
+                T value = latest.getAndSet(null);
+                if (value != null) {
+                    emitter.send(value);
+                    sent.increment();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 연결이 끊어진 경우에는 컨테이너가 오류를 알려주므로 complete를 호출하지 않고 제거만 한다.
+                failed.increment();
+                clients.remove(this);
+                latest.set(null);
+            } finally {
+                scheduled.set(false);
+            }
+            // 전송하는 동안 새로운 값이 들어왔지만 offer에서 예약하지 못한 경우에는 여기서 다시 예약한다.
+            if (latest.get() != null && clients.contains(this) && scheduled.compareAndSet(false, true)) {
+                writers.execute(this::flush);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.roy.webflux.util;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// CompletionV5는 요청마다 from, andApply, andError, andAccept를 호출하여 Completion 객체의 체인을 새로 만들고,
+// 각 단계의 람다도 요청의 값(DeferredResult, 요청 id 등)을 캡처하기 때문에 요청마다 새로 생성된다.
+// CompletionPipeline은 단계의 구성을 한 번만 만들어두고 요청마다 재사용하는 변경할 수 없는(immutable) 템플릿이다.
+// 각 단계는 요청마다 달라지는 값을 캡처하지 않고 run에 전달된 context를 첫 번째 인자로 받는다.
+// run을 호출하면 context와 현재 단계의 위치만 가지는 Execution 객체 하나가 만들어지고, 이 객체가 모든 단계의 콜백으로 재사용된다.
+// andApply, andError, andAccept는 기존 템플릿을 변경하지 않고 단계가 추가된 새로운 템플릿을 반환하므로 만들어진 템플릿은 여러 스레드에서 함께 사용할 수 있다.
+// 에러가 발생하면 CompletionV5와 같이 이후의 단계 중 가장 가까운 andError로 전달되고, andError가 없다면 에러는 무시된다.
+// 단계의 함수가 future를 반환하지 않고 예외를 던지는 경우에도 같은 방법으로 andError에 전달한다.
+// future의 콜백에서 다음 단계를 바로 호출하지 않고 Trampoline을 거치기 때문에 이미 완료된 future를 반환하는 단계가 길게 이어져도 스택이 깊어지지 않는다.
+public final class CompletionPipeline<C, T> {
+    private static final int APPLY = 0;
+    private static final int ERROR = 1;
+    private static final int ACCEPT = 2;
+
+    private final Stage[] stages;
+
+    private CompletionPipeline(Stage[] stages) {
+        this.stages = stages;
+    }
+
+    public static <C, T> CompletionPipeline<C, T> from(Function<C, ? extends ListenableFuture<T>> source) {
+        BiFunction<Object, Object, ListenableFuture<?>> apply = (context, ignored) -> source.apply(cast(context));
+        return new CompletionPipeline<>(new Stage[]{new Stage(APPLY, apply, null)});
+    }
+
+    public <V> CompletionPipeline<C, V> andApply(BiFunction<C, T, ? extends ListenableFuture<V>> function) {
+        BiFunction<Object, Object, ListenableFuture<?>> apply = (context, value) -> function.apply(cast(context), cast(value));
+        return append(new Stage(APPLY, apply, null));
+    }
+
+    public CompletionPipeline<C, T> andError(BiConsumer<C, Throwable> errConsumer) {
+        BiConsumer<Object, Object> consumer = (context, throwable) -> errConsumer.accept(cast(context), (Throwable) throwable);
+        return append(new Stage(ERROR, null, consumer));
+    }
+
+    public CompletionPipeline<C, Void> andAccept(BiConsumer<C, T> consumer) {
+        BiConsumer<Object, Object> accept = (context, value) -> consumer.accept(cast(context), cast(value));
+        return append(new Stage(ACCEPT, null, accept));
+    }
+
+    public void run(C context) {
+        new Execution(stages, context).proceed(null);
+    }
+
+    private <V> CompletionPipeline<C, V> append(Stage stage) {
+        Stage[] appended = Arrays.copyOf(stages, stages.length + 1);
+        appended[stages.length] = stage;
+        return new CompletionPipeline<>(appended);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    private static final class Stage {
+        private final int kind;
+        private final BiFunction<Object, Object, ListenableFuture<?>> apply;
+        private final BiConsumer<Object, Object> consume;
+
+        private Stage(int kind, BiFunction<Object, Object, ListenableFuture<?>> apply, BiConsumer<Object, Object> consume) {
+            this.kind = kind;
+            this.apply = apply;
+            this.consume = consume;
+        }
+    }
+
+    // 요청 하나의 실행 상태다. 단계는 항상 이전 단계의 future가 완료된 뒤에 실행되므로 index는 한 번에 하나의 스레드만 변경한다.
+    // 완료된 결과를 필드에 담고 자기 자신을 Trampoline에 넘기기 때문에 단계를 이어갈 때 별도의 객체를 만들지 않는다.
+    private static final class Execution implements ListenableFutureCallback<Object>, Runnable {
+        private final Stage[] stages;
+        private final Object context;
+        private int index;
+        private Object value;
+        private Throwable failure;
+
+        private Execution(Stage[] stages, Object context) {
+            this.stages = stages;
+            this.context = context;
+        }
+
+        @Override
+        public void onSuccess(Object value) {
+            this.value = value;
+            Trampoline.execute(this);
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            this.failure = throwable;
+            Trampoline.execute(this);
+        }
+
+        @Override
+        public void run() {
+            Object value = this.value;
+            Throwable failure = this.failure;
+            this.value = null;
+            this.failure = null;
+            if (failure != null) {
+                fail(failure);
+            } else {
+                proceed(value);
+            }
+        }
+
+        private void proceed(Object value) {
+            while (index < stages.length) {
+                Stage stage = stages[index++];
+                if (stage.kind == ACCEPT) {
+                    stage.consume.accept(context, value);
+                } else if (stage.kind == APPLY) {
+                    ListenableFuture<?> lf;
+                    try {
+                        lf = stage.apply.apply(context, value);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                        return;
+                    }
+                    lf.addCallback(this);
+                    return;
+                }
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            while (index < stages.length) {
+                Stage stage = stages[index++];
+                if (stage.kind == ERROR) {
+                    stage.consume.accept(context, throwable);
+                    return;
+                }
+            }
+        }
+    }
+}
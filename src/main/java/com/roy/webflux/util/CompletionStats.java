@@ -0,0 +1,70 @@
+package com.roy.webflux.util;
+
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Completion 체인의 단계마다 어떤 스레드에서 실행되었는지 기록한다.
+// hops는 이전 단계와 다른 스레드에서 실행된 횟수이고, eventLoopRuns와 eventLoopMicros는 이벤트 루프 스레드에서 실행된 횟수와 시간이다.
+// 이벤트 루프 스레드에서 시간이 오래 걸리는 단계가 있다면 그동안 같은 이벤트 루프를 사용하는 모든 연결의 I/O가 멈추므로
+// andPublishOn이나 andApplyAsync로 해당 단계를 다른 executor로 옮겨야 한다.
+// Netty의 이벤트 루프 스레드는 FastThreadLocalThread로 만들어지기 때문에 기본값으로는 이것으로 이벤트 루프 스레드를 판단한다.
+// 단계는 체인에 연결된 순서(1부터 시작)와 종류로 구분하며, 같은 체인 구성을 사용하는 요청끼리 같은 CompletionStats를 공유한다.
+public class CompletionStats {
+    private final ConcurrentMap<Integer, StageStats> stages = new ConcurrentHashMap<>();
+    private final Predicate<Thread> eventLoop;
+
+    public CompletionStats() {
+        this(thread -> thread instanceof FastThreadLocalThread);
+    }
+
+    public CompletionStats(Predicate<Thread> eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    boolean isEventLoop(Thread thread) {
+        return eventLoop.test(thread);
+    }
+
+    void record(int stage, String kind, boolean hop, boolean onEventLoop, long nanos) {
+        StageStats stats = stages.computeIfAbsent(stage, key -> new StageStats(kind));
+        stats.runs.increment();
+        if (hop) {
+            stats.hops.increment();
+        }
+        if (onEventLoop) {
+            stats.eventLoopTimes.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        new TreeMap<>(stages).forEach((stage, stats) -> {
+            Map<String, Object> stageSnapshot = new LinkedHashMap<>();
+            stageSnapshot.put("runs", stats.runs.sum());
+            stageSnapshot.put("hops", stats.hops.sum());
+            stageSnapshot.put("eventLoopRuns", stats.eventLoopTimes.count());
+            stageSnapshot.put("eventLoopMicros", stats.eventLoopTimes.snapshot());
+            snapshot.put(stage + ":" + stats.kind, stageSnapshot);
+        });
+        return snapshot;
+    }
+
+    private static final class StageStats {
+        private final String kind;
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder hops = new LongAdder();
+        private final Histogram eventLoopTimes = new Histogram();
+
+        private StageStats(String kind) {
+            this.kind = kind;
+        }
+    }
+}
@@ -10,48 +10,309 @@ package com.roy.webflux.util;
 // 이번 장에서는 Callback 지옥 코드를 해결하는 방법에 대해서 알아보았다.
 
 
+import io.netty.util.Timeout;
 import org.springframework.util.concurrent.ListenableFuture;
 
-import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+// 이전 단계의 결과를 다음 단계로 전달할 때는 Trampoline을 거친다.
+// 이미 완료된 future(AsyncResult 등)를 반환하는 단계가 길게 이어져도 재귀 호출 대신 반복문으로 실행되기 때문에 스택의 깊이가 일정하다.
+// from에 이미 완료된 future를 전달하면 andApply 등으로 다음 단계가 연결되기 전에 결과가 도착한다.
+// 이 경우 결과(또는 에러)를 보관해두었다가 다음 단계가 연결되는 시점에 전달하여 결과가 유실되지 않도록 한다.
+// 다음 단계는 기본적으로 이전 단계의 future를 완료한 스레드에서 실행된다. 원격 호출의 응답이라면 이벤트 루프 스레드다.
+// andPublishOn은 이후의 단계를 지정한 executor에서 실행하도록 스레드를 옮기고, andApplyAsync는 하나의 계산만 executor에서 실행한다.
+// 다시 다른 executor로 옮기고 싶다면 andPublishOn을 한 번 더 연결하면 된다.
+// from에 CompletionStats를 전달하면 단계마다 스레드를 옮긴 횟수와 이벤트 루프 스레드에서 실행된 시간을 기록한다.
+// timeout은 바로 앞 단계(from 또는 andApply)의 future에, chainTimeout은 체인 전체에 SharedTimer로 타임아웃을 건다.
+// 타임아웃이 지나거나 cancel이 호출되면 진행 중인 future를 취소하고, 가장 가까운 andError로 TimeoutException(또는 CancellationException)을 전달한다.
+// 이후의 andApply는 실행되지 않으므로 더 이상 원격 호출을 보내지 않는다.
+// andAccept는 마지막 단계를 반환하므로 dr.onCompletion(completion::cancel)과 같이 연결하면
+// DeferredResult가 타임아웃되거나 클라이언트의 연결이 끊어졌을 때 아직 응답을 기다리는 원격 호출을 취소하여 커넥션을 바로 반환한다.
 public class CompletionV5<S, T> {
     protected CompletionV5 next;
+    private boolean settled;
+    private boolean failed;
+    private Object outcome;
+    private CompletionStats stats;
+    private int stage;
+    private Thread ranOn;
+    private Executor affinity;
+    private Chain chain;
+    private volatile ListenableFuture<?> future;
+    private volatile long timeoutMillis;
+    private Timeout stageTimeout;
 
-    public void andAccept(Consumer<T> consumer) {
-        this.next = new AcceptCompletion<>(consumer);
+    public CompletionV5<T, Void> andAccept(Consumer<T> consumer) {
+        CompletionV5<T, Void> completionV5 = new AcceptCompletion<>(consumer);
+        link(completionV5);
+        return completionV5;
     }
 
     public static <S, T> CompletionV5<S, T> from(ListenableFuture<T> lf) {
+        return from(lf, null);
+    }
+
+    public static <S, T> CompletionV5<S, T> from(ListenableFuture<T> lf, CompletionStats stats) {
         CompletionV5<S, T> completionV5 = new CompletionV5<>();
-        lf.addCallback(completionV5::complete, completionV5::error);
+        completionV5.stats = stats;
+        completionV5.chain = new Chain();
+        completionV5.ranOn = Thread.currentThread();
+        completionV5.await(lf);
         return completionV5;
     }
 
     public CompletionV5<T, T> andError(Consumer<Throwable> errConsumer) {
         CompletionV5<T, T> completionV5 = new ErrorCompletion<>(errConsumer);
-        this.next = completionV5;
+        link(completionV5);
         return completionV5;
     }
 
     public <V> CompletionV5<T, V> andApply(Function<T, ListenableFuture<V>> function) {
         CompletionV5<T, V> completionV5 = new ApplyCompletion<>(function);
-        this.next = completionV5;
+        link(completionV5);
+        return completionV5;
+    }
+
+    // 이후의 단계를 executor의 스레드에서 실행한다. 이벤트 루프 스레드에서 CPU를 많이 사용하는 작업을 실행하지 않도록 할 때 사용한다.
+    public CompletionV5<T, T> andPublishOn(Executor executor) {
+        CompletionV5<T, T> completionV5 = new PublishOnCompletion<>(executor);
+        link(completionV5);
+        return completionV5;
+    }
+
+    // future를 반환하지 않는 계산을 executor에서 실행하고 그 결과를 다음 단계로 전달한다. 다음 단계는 계산을 마친 executor의 스레드에서 이어서 실행된다.
+    public <V> CompletionV5<T, V> andApplyAsync(Function<T, V> function, Executor executor) {
+        CompletionV5<T, V> completionV5 = new ApplyAsyncCompletion<>(function, executor);
+        link(completionV5);
         return completionV5;
     }
 
+    // 이 단계의 future가 millis 안에 완료되지 않으면 future를 취소하고 TimeoutException으로 실패한다.
+    // from은 이미 future를 기다리고 있으므로 호출한 시점부터, andApply는 단계가 실행되어 future를 받은 시점부터 시간을 잰다.
+    public CompletionV5<S, T> timeout(long millis) {
+        this.timeoutMillis = millis;
+        if (future != null) {
+            scheduleStageTimeout();
+        }
+        return this;
+    }
+
+    // 체인 전체가 millis 안에 끝나지 않으면 진행 중인 future를 취소하고 TimeoutException을 andError로 전달한다.
+    public CompletionV5<S, T> chainTimeout(long millis) {
+        chain.schedule(this, millis);
+        return this;
+    }
+
+    // 체인의 어느 단계에서 호출하더라도 체인 전체를 취소한다. 이미 끝난 체인이라면 아무것도 하지 않는다.
+    public void cancel() {
+        cancel(new CancellationException("Completion chain cancelled"));
+    }
+
     public void run(S value) {}
 
+    protected String kind() {
+        return "from";
+    }
+
     protected void complete(T success) {
-        if (Objects.nonNull(next)) {
-            next.run(success);
-        }
+        settle(false, success, null);
     }
 
     protected void error(Throwable throwable) {
-        if (Objects.nonNull(next)) {
-            next.error(throwable);
+        settle(true, throwable, null);
+    }
+
+    // 단계의 future를 기다린다. 취소와 동시에 future를 받은 경우에도 future가 취소되도록 등록한 뒤에 취소 여부를 확인한다.
+    protected void await(ListenableFuture<T> lf) {
+        future = lf;
+        chain.inFlight = this;
+        Throwable cancelled = chain.cancelled();
+        if (cancelled != null) {
+            abort(cancelled);
+            return;
+        }
+        if (timeoutMillis > 0) {
+            scheduleStageTimeout();
+        }
+        lf.addCallback(this::complete, this::error);
+    }
+
+    // 체인이 정상적으로 끝나면 체인 전체의 타임아웃을 취소한다.
+    protected void finish() {
+        chain.finish();
+    }
+
+    private void cancel(Throwable cause) {
+        if (!chain.cancel(cause)) {
+            return;
+        }
+        CompletionV5 current = chain.inFlight;
+        if (current != null) {
+            current.abort(cause);
+        }
+    }
+
+    // 에러를 다음 단계로 전달하기 전에 future를 먼저 취소하여 andError가 실행될 때는 이미 원격 호출이 취소되어 있도록 한다.
+    private void abort(Throwable cause) {
+        settle(true, cause, future);
+    }
+
+    private void scheduleStageTimeout() {
+        long millis = timeoutMillis;
+        Timeout timeout = SharedTimer.get().newTimeout(
+                t -> abort(new TimeoutException("Stage " + stage + " timed out after " + millis + "ms")),
+                millis, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            if (settled) {
+                timeout.cancel();
+                return;
+            }
+            stageTimeout = timeout;
+        }
+    }
+
+    private void link(CompletionV5 completion) {
+        completion.stats = stats;
+        completion.stage = stage + 1;
+        completion.chain = chain;
+        completion.affinity = downstreamExecutor();
+        boolean deliver;
+        synchronized (this) {
+            this.next = completion;
+            deliver = settled;
+        }
+        if (deliver) {
+            forward(completion, true);
+        }
+    }
+
+    // 결과는 한 번만 정해진다. 타임아웃이나 취소로 먼저 실패한 뒤에 도착한 future의 결과는 무시한다.
+    private void settle(boolean failed, Object outcome, ListenableFuture<?> cancel) {
+        CompletionV5 target;
+        Timeout timeout;
+        synchronized (this) {
+            if (settled) {
+                return;
+            }
+            this.settled = true;
+            this.failed = failed;
+            this.outcome = outcome;
+            target = next;
+            timeout = stageTimeout;
+        }
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        if (cancel != null) {
+            cancel.cancel(true);
+        }
+        if (target != null) {
+            forward(target, false);
+        }
+    }
+
+    private void forward(CompletionV5 target, boolean linking) {
+        Object value = outcome;
+        Thread previous = ranOn;
+        if (failed) {
+            dispatch(() -> target.error((Throwable) value), target, linking);
+        } else {
+            dispatch(() -> target.execute(value, previous), target, linking);
+        }
+    }
+
+    // 다음 단계를 실행할 스레드를 결정한다. 기본적으로는 현재 스레드에서 Trampoline을 거쳐 실행한다.
+    // andPublishOn 이후의 단계에 결과를 연결하는 시점에 전달하는 경우에는 연결한 스레드가 아니라 andPublishOn의 executor에서 실행한다.
+    protected void dispatch(Runnable task, CompletionV5 target, boolean linking) {
+        if (linking && affinity != null) {
+            executeOn(affinity, task, target);
+            return;
+        }
+        Trampoline.execute(task);
+    }
+
+    // 이후의 단계가 실행되어야 하는 executor다. andPublishOn 이후의 단계는 같은 executor를 물려받는다.
+    protected Executor downstreamExecutor() {
+        return affinity;
+    }
+
+    private static void executeOn(Executor executor, Runnable task, CompletionV5 target) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            target.error(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(Object value, Thread previous) {
+        Throwable cancelled = chain.cancelled();
+        if (cancelled != null) {
+            error(cancelled);
+            return;
+        }
+        Thread current = Thread.currentThread();
+        ranOn = current;
+        if (stats == null) {
+            run((S) value);
+            return;
+        }
+        boolean onEventLoop = stats.isEventLoop(current);
+        long startedAt = System.nanoTime();
+        try {
+            run((S) value);
+        } finally {
+            stats.record(stage, kind(), previous != null && previous != current, onEventLoop, System.nanoTime() - startedAt);
+        }
+    }
+
+    // 체인의 모든 단계가 공유하는 상태다. 취소(또는 타임아웃)의 원인, 현재 future를 기다리는 단계, 체인 전체의 타임아웃을 가진다.
+    private static final class Chain {
+        private static final Throwable FINISHED = new CancellationException("Completion chain finished");
+
+        private final AtomicReference<Throwable> state = new AtomicReference<>();
+        private volatile CompletionV5 inFlight;
+        private volatile Timeout timeout;
+
+        private Throwable cancelled() {
+            Throwable cause = state.get();
+            return cause == FINISHED ? null : cause;
+        }
+
+        private boolean cancel(Throwable cause) {
+            if (!state.compareAndSet(null, cause)) {
+                return false;
+            }
+            cancelTimeout();
+            return true;
+        }
+
+        private void finish() {
+            state.compareAndSet(null, FINISHED);
+            cancelTimeout();
+        }
+
+        private void schedule(CompletionV5 completion, long millis) {
+            timeout = SharedTimer.get().newTimeout(
+                    t -> completion.cancel(new TimeoutException("Completion chain timed out after " + millis + "ms")),
+                    millis, TimeUnit.MILLISECONDS);
+            if (state.get() != null) {
+                cancelTimeout();
+            }
+        }
+
+        private void cancelTimeout() {
+            Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
         }
     }
 
@@ -62,14 +323,17 @@ public class CompletionV5<S, T> {
         }
         @Override
         public void run(T value) {
-            if (Objects.nonNull(next)) {
-                next.run(value);
-            }
+            complete(value);
         }
         @Override
         public void error(Throwable e) {
+            finish();
             errConsumer.accept(e);
         }
+        @Override
+        protected String kind() {
+            return "error";
+        }
     }
 
     public static class AcceptCompletion<S> extends CompletionV5<S, Void> {
@@ -79,9 +343,13 @@ public class CompletionV5<S, T> {
         }
         @Override
         public void run(S value) {
+            finish();
             consumer.accept(value);
         }
-
+        @Override
+        protected String kind() {
+            return "accept";
+        }
     }
 
     public static class ApplyCompletion<S, T> extends CompletionV5<S, T> {
@@ -91,8 +359,72 @@ public class CompletionV5<S, T> {
         }
         @Override
         public void run(S value) {
-            ListenableFuture<T> lf = function.apply(value);
-            lf.addCallback(this::complete, this::error);
+            ListenableFuture<T> lf;
+            try {
+                lf = function.apply(value);
+            } catch (RuntimeException e) {
+                error(e);
+                return;
+            }
+            await(lf);
+        }
+        @Override
+        protected String kind() {
+            return "apply";
+        }
+    }
+
+    public static class PublishOnCompletion<T> extends CompletionV5<T, T> {
+        private final Executor executor;
+        public PublishOnCompletion(Executor executor) {
+            this.executor = executor;
+        }
+        @Override
+        public void run(T value) {
+            complete(value);
+        }
+        // 다음 단계가 연결되기 전에 결과가 도착해서 연결하는 시점에 전달하는 경우에도 항상 executor에서 실행한다.
+        @Override
+        protected void dispatch(Runnable task, CompletionV5 target, boolean linking) {
+            executeOn(executor, task, target);
+        }
+        @Override
+        protected Executor downstreamExecutor() {
+            return executor;
+        }
+        @Override
+        protected String kind() {
+            return "publishOn";
+        }
+    }
+
+    public static class ApplyAsyncCompletion<S, T> extends CompletionV5<S, T> {
+        private final Function<S, T> function;
+        private final Executor executor;
+        public ApplyAsyncCompletion(Function<S, T> function, Executor executor) {
+            this.function = function;
+            this.executor = executor;
+        }
+        @Override
+        public void run(S value) {
+            try {
+                executor.execute(() -> {
+                    T result;
+                    try {
+                        result = function.apply(value);
+                    } catch (RuntimeException e) {
+                        error(e);
+                        return;
+                    }
+                    complete(result);
+                });
+            } catch (RejectedExecutionException e) {
+                error(e);
+            }
+        }
+        @Override
+        protected String kind() {
+            return "applyAsync";
         }
     }
 }
@@ -0,0 +1,179 @@
+package com.roy.webflux.util;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// 응답이 늦은 호출을 한 번 더 보내서(hedge) 꼬리 지연(p99)을 줄인다.
+// 호출이 delay 안에 응답하지 않으면 같은 호출을 한 번 더 보내고 먼저 성공한 응답을 사용하며 나머지 호출은 취소한다.
+// delay는 지금까지 성공한 호출의 응답 시간 분포에서 percentile에 해당하는 값이며, 기록된 호출이 warmup개보다 적으면 hedge하지 않는다.
+// 응답 시간은 첫 번째 호출을 보낸 시점부터 결과를 받은 시점까지로 기록한다. hedge가 이기면 취소되는 첫 번째 호출의 응답 시간은 알 수 없지만
+// hedge가 이긴 시점까지 걸린 시간보다는 길기 때문에, hedge의 응답 시간만 기록하면 분포가 빠른 쪽으로 치우쳐 delay가 계속 줄어들고 hedge가 늘어난다.
+// 모든 호출에 hedge를 보내면 부하가 두 배가 되므로 hedge의 수는 전체 호출 수의 budget 비율(예: 0.05 = 5%)을 넘지 않는다.
+// hedge는 응답 지연을 줄이기 위한 것이지 재시도가 아니므로 hedge를 보내기 전에 첫 번째 호출이 실패하면 바로 실패한다.
+// hedge를 보낸 경우에는 두 호출이 모두 실패해야 실패로 처리한다.
+// 라우트마다 응답 시간 분포가 다르므로 라우트마다 별도의 Hedger를 사용한다.
+public class Hedger {
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double percentile;
+    private final double budget;
+    private final long minDelayMillis;
+    private final long warmup;
+    private final Timer timer;
+    private final LongSupplier clock;
+    private final Histogram latencies = new Histogram();
+    private final LongAdder requests = new LongAdder();
+    private final AtomicLong hedged = new AtomicLong();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private volatile long delayMillis;
+    private volatile long delayRefreshedAt;
+
+    public Hedger(double percentile, double budget, long minDelayMillis, long warmup) {
+        this(percentile, budget, minDelayMillis, warmup, SharedTimer.get());
+    }
+
+    public Hedger(double percentile, double budget, long minDelayMillis, long warmup, Timer timer) {
+        this(percentile, budget, minDelayMillis, warmup, timer, System::nanoTime);
+    }
+
+    // 테스트에서 응답 시간과 delay를 다시 계산하는 시점을 직접 정할 수 있도록 시계(나노초)를 받는다.
+    Hedger(double percentile, double budget, long minDelayMillis, long warmup, Timer timer, LongSupplier clock) {
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minDelayMillis = minDelayMillis;
+        this.warmup = warmup;
+        this.timer = timer;
+        this.clock = clock;
+        this.delayRefreshedAt = clock.getAsLong() - DELAY_REFRESH_NANOS;
+    }
+
+    public <V> ListenableFuture<V> call(Supplier<? extends ListenableFuture<V>> call) {
+        requests.increment();
+        HedgedCall<V> hedgedCall = new HedgedCall<>(call);
+        hedgedCall.attempt(false);
+        if (latencies.count() >= warmup && !hedgedCall.result.isDone()) {
+            hedgedCall.timeout = timer.newTimeout(t -> hedgedCall.hedge(), delay(), TimeUnit.MILLISECONDS);
+        }
+        return hedgedCall.result;
+    }
+
+    // 백분위 계산은 히스토그램 전체를 읽어야 하므로 매 호출마다 계산하지 않고 1초에 한 번만 갱신한다.
+    long delay() {
+        long now = clock.getAsLong();
+        if (now - delayRefreshedAt >= DELAY_REFRESH_NANOS) {
+            delayMillis = Math.max(minDelayMillis, latencies.percentile(percentile));
+            delayRefreshedAt = now;
+        }
+        return delayMillis;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", requests.sum());
+        snapshot.put("hedged", hedged.get());
+        snapshot.put("hedgeWins", hedgeWins.sum());
+        snapshot.put("budgetExhausted", budgetExhausted.sum());
+        snapshot.put("delayMillis", delayMillis);
+        snapshot.put("latency", latencies.snapshot());
+        return snapshot;
+    }
+
+    // 확인과 증가 사이에 다른 hedge가 끼어들면 budget을 넘어설 수 있으므로 CAS로 확인한 값에서만 증가시킨다.
+    private boolean tryAcquireBudget() {
+        long current;
+        do {
+            current = hedged.get();
+            if (current + 1 > budget * requests.sum()) {
+                budgetExhausted.increment();
+                return false;
+            }
+        } while (!hedged.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private final class HedgedCall<V> {
+        private final Supplier<? extends ListenableFuture<V>> call;
+        private final SettableListenableFuture<V> result = new SettableListenableFuture<>();
+        private final long startedAt = clock.getAsLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile ListenableFuture<V> primary;
+        private volatile ListenableFuture<V> secondary;
+        private volatile Timeout timeout;
+
+        private HedgedCall(Supplier<? extends ListenableFuture<V>> call) {
+            this.call = call;
+            // 결과가 정해지거나 호출한 쪽에서 취소하면 아직 진행 중인 호출과 hedge 타이머를 정리한다.
+            result.addCallback(v -> cleanUp(), ex -> cleanUp());
+        }
+
+        private void hedge() {
+            if (result.isDone() || !tryAcquireBudget()) {
+                return;
+            }
+            attempt(true);
+        }
+
+        private void attempt(boolean isHedge) {
+            pending.incrementAndGet();
+            ListenableFuture<V> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                failed(e);
+                return;
+            }
+            if (isHedge) {
+                secondary = future;
+            } else {
+                primary = future;
+            }
+            future.addCallback(value -> {
+                if (!result.set(value)) {
+                    return;
+                }
+                latencies.record(TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - startedAt));
+                if (isHedge) {
+                    hedgeWins.increment();
+                }
+            }, this::failed);
+            if (result.isDone()) {
+                cleanUp();
+            }
+        }
+
+        private void failed(Throwable ex) {
+            // hedge를 보내기 전에 첫 번째 호출이 실패한 경우에는 pending이 0이 되므로 바로 실패한다.
+            // 먼저 성공한 호출이 있다면 result는 이미 완료되었으므로 setException은 무시된다.
+            if (pending.decrementAndGet() == 0) {
+                result.setException(ex);
+            }
+        }
+
+        private void cleanUp() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            cancel(primary);
+            cancel(secondary);
+        }
+
+        private void cancel(ListenableFuture<V> future) {
+            if (future != null && !future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+}
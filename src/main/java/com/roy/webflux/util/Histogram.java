@@ -0,0 +1,95 @@
+package com.roy.webflux.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// 락 없이 값을 기록하는 간단한 히스토그램이다.
+// 0 ~ 15는 값 그대로 버킷을 사용하고 그보다 큰 값은 2의 거듭제곱 구간을 다시 8개로 나눈 버킷에 기록한다.
+// 덕분에 버킷의 수는 고정(488개)이고 백분위 값의 오차는 약 12% 이내다.
+// 배치 크기, 대기 시간, 응답 시간처럼 분포를 확인하고 싶은 값을 기록하는 용도로 사용한다.
+public class Histogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(LINEAR + (63 - 4) * SUB);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    // p는 0 ~ 1 사이의 값이며 해당 백분위가 속한 버킷의 상한을 반환한다.
+    public long percentile(double p) {
+        long total = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", count());
+        snapshot.put("mean", mean());
+        snapshot.put("p50", percentile(0.5));
+        snapshot.put("p90", percentile(0.9));
+        snapshot.put("p99", percentile(0.99));
+        snapshot.put("max", max());
+        return snapshot;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB - 1));
+        return LINEAR + (exponent - 4) * SUB + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB + 4;
+        int sub = (index - LINEAR) % SUB;
+        long lower = (long) (SUB + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,136 @@
+package com.roy.webflux.util;
+
+import org.springframework.util.concurrent.CompletableToListenableFutureAdapter;
+import org.springframework.util.concurrent.ListenableFuture;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 서로 의존하지 않는 여러 ListenableFuture를 동시에 실행하고 결과를 하나로 모으는 조합 함수다.
+// CompletionV5는 단계를 순서대로만 연결할 수 있기 때문에 독립적인 두 호출도 앞의 호출이 끝난 뒤에 다음 호출을 보내야 했다.
+// 호출을 모두 먼저 보낸 뒤에 이 함수로 결과를 모으면 2초씩 걸리는 두 호출도 4초가 아니라 2초 만에 끝난다.
+// zip은 두 결과를 Tuple2로, allOf는 모든 결과를 입력한 순서대로 List로 모으며 하나라도 실패하면 바로 실패하고 나머지 future를 취소한다.
+// firstSuccess는 가장 먼저 성공한 결과를 사용하고 나머지 future를 취소하며, 모두 실패한 경우에만 첫 번째 에러를 cause로(나머지는 suppressed) 가지는 새로운 예외로 실패한다.
+// 결과는 원자적 카운터와 배열에 기록하고 CompletableFuture의 complete로 한 번만 완료하므로 락을 사용하지 않는다.
+// 반환된 future를 취소하면 아직 완료되지 않은 입력 future도 함께 취소된다.
+public final class ListenableFutures {
+
+    private ListenableFutures() {}
+
+    public static <A, B> ListenableFuture<Tuple2<A, B>> zip(ListenableFuture<A> first, ListenableFuture<B> second) {
+        List<ListenableFuture<?>> futures = Arrays.asList(first, second);
+        CompletableFuture<Tuple2<A, B>> result = new CompletableFuture<>();
+        AtomicReference<A> firstValue = new AtomicReference<>();
+        AtomicReference<B> secondValue = new AtomicReference<>();
+        AtomicInteger remaining = new AtomicInteger(2);
+        cancelOnCompletion(result, futures);
+        first.addCallback(value -> {
+            firstValue.set(value);
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(Tuples.of(firstValue.get(), secondValue.get()));
+            }
+        }, result::completeExceptionally);
+        second.addCallback(value -> {
+            secondValue.set(value);
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(Tuples.of(firstValue.get(), secondValue.get()));
+            }
+        }, result::completeExceptionally);
+        return new CompletableToListenableFutureAdapter<>(result);
+    }
+
+    public static <T> ListenableFuture<List<T>> allOf(List<? extends ListenableFuture<? extends T>> futures) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        int size = futures.size();
+        if (size == 0) {
+            result.complete(Collections.emptyList());
+            return new CompletableToListenableFutureAdapter<>(result);
+        }
+        AtomicReferenceArray<T> values = new AtomicReferenceArray<>(size);
+        AtomicInteger remaining = new AtomicInteger(size);
+        cancelOnCompletion(result, futures);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            futures.get(i).addCallback(value -> {
+                values.set(index, value);
+                if (remaining.decrementAndGet() == 0) {
+                    List<T> list = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        list.add(values.get(j));
+                    }
+                    result.complete(list);
+                }
+            }, result::completeExceptionally);
+        }
+        return new CompletableToListenableFutureAdapter<>(result);
+    }
+
+    public static <T> ListenableFuture<T> firstSuccess(List<? extends ListenableFuture<? extends T>> futures) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        int size = futures.size();
+        if (size == 0) {
+            result.completeExceptionally(new NoSuchElementException("No futures to wait for"));
+            return new CompletableToListenableFutureAdapter<>(result);
+        }
+        AtomicInteger slots = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReferenceArray<Throwable> errors = new AtomicReferenceArray<>(size);
+        cancelOnCompletion(result, futures);
+        for (ListenableFuture<? extends T> future : futures) {
+            future.addCallback(result::complete, e -> {
+                errors.set(slots.getAndIncrement(), e);
+                if (failures.incrementAndGet() == size) {
+                    result.completeExceptionally(allFailed(errors, size));
+                }
+            });
+        }
+        return new CompletableToListenableFutureAdapter<>(result);
+    }
+
+    // 입력 future의 에러는 다른 호출자(SingleFlight로 합쳐진 호출자, 캐시된 실패 future 등)와 같은 인스턴스일 수 있으므로 변경하지 않는다.
+    // 새로운 예외를 만들어 실패한 순서대로 첫 번째 에러를 cause로, 나머지 에러를 suppressed로 담고 같은 인스턴스는 한 번만 담는다.
+    // 에러를 배열에 기록한 뒤에 failures를 증가시키므로 failures가 size에 도달한 스레드는 모든 에러를 볼 수 있다.
+    private static Throwable allFailed(AtomicReferenceArray<Throwable> errors, int size) {
+        List<Throwable> distinct = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Throwable e = errors.get(i);
+            if (!containsInstance(distinct, e)) {
+                distinct.add(e);
+            }
+        }
+        IllegalStateException failure = new IllegalStateException("All " + size + " futures failed", distinct.get(0));
+        for (int i = 1; i < distinct.size(); i++) {
+            failure.addSuppressed(distinct.get(i));
+        }
+        return failure;
+    }
+
+    private static boolean containsInstance(List<Throwable> errors, Throwable e) {
+        for (Throwable error : errors) {
+            if (error == e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 결과가 정해지면(성공, 실패, 취소) 아직 완료되지 않은 입력 future를 취소한다. 이미 완료된 future의 cancel은 아무것도 하지 않는다.
+    private static void cancelOnCompletion(CompletableFuture<?> result, List<? extends ListenableFuture<?>> futures) {
+        result.whenComplete((value, e) -> {
+            for (ListenableFuture<?> future : futures) {
+                if (!future.isDone()) {
+                    future.cancel(true);
+                }
+            }
+        });
+    }
+}
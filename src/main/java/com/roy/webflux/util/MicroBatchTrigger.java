@@ -0,0 +1,117 @@
+package com.roy.webflux.util;
+
+import io.netty.util.Timer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 크기 또는 시간 기준으로 flush를 실행하는 마이크로 배치 트리거다.
+// arrived()가 maxSize번 호출되었거나 배치의 첫 번째 요청이 도착한 뒤 maxWaitMillis가 지나면 둘 중 먼저 만족한 조건으로 flush를 한 번 실행한다.
+// 상태는 AtomicLong 하나에 상위 32비트는 배치 번호(epoch), 하위 32비트는 배치에 쌓인 요청의 수를 담아 CAS로만 변경한다.
+// flush가 실행되면 epoch가 증가하고 카운터는 0으로 돌아가기 때문에 이전 배치의 타이머가 늦게 실행되더라도 새로운 배치를 flush하지 않는다.
+// flush된 배치의 크기와 첫 요청이 기다린 시간은 각각 히스토그램에 기록된다.
+// 배치의 시작 시간은 CAS에 성공하여 실제로 배치의 첫 번째 요청이 된 경우에만 기록한다. CAS에 실패한 시도가 기록하면 진행 중인 배치의 시작 시간을 덮어쓰게 된다.
+// 배치와 관계없이 대기 중인 요청 전체에 응답한 경우에는 reset으로 카운터를 0으로 돌린다.
+public class MicroBatchTrigger {
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final Timer timer;
+    private final Runnable flush;
+    private final AtomicLong state = new AtomicLong();
+    private final Histogram flushSizes = new Histogram();
+    private final Histogram waitTimes = new Histogram();
+    private volatile long batchStartedAt;
+
+    public MicroBatchTrigger(int maxSize, long maxWaitMillis, Runnable flush) {
+        this(maxSize, maxWaitMillis, SharedTimer.get(), flush);
+    }
+
+    public MicroBatchTrigger(int maxSize, long maxWaitMillis, Timer timer, Runnable flush) {
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timer = timer;
+        this.flush = flush;
+    }
+
+    public void arrived() {
+        while (true) {
+            long current = state.get();
+            int epoch = epoch(current);
+            int count = count(current) + 1;
+            if (count >= maxSize) {
+                if (state.compareAndSet(current, pack(epoch + 1, 0))) {
+                    if (count == 1) {
+                        batchStartedAt = System.nanoTime();
+                    }
+                    flush(count);
+                    return;
+                }
+            } else if (state.compareAndSet(current, pack(epoch, count))) {
+                if (count == 1) {
+                    batchStartedAt = System.nanoTime();
+                    timer.newTimeout(timeout -> expire(epoch), maxWaitMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    // 카운터를 0으로 돌리고 epoch를 올려서 진행 중이던 배치의 타이머가 flush하지 않도록 한다. flush는 실행하지 않으며 히스토그램에도 기록하지 않는다.
+    // 대기 중인 요청 전체에 응답하기 전에 호출해야 한다. 응답한 뒤에 호출하면 그 사이에 등록되고 집계된 요청의 수까지 지워져서 해당 요청은 다음 배치에 포함되지 않는다.
+    public void reset() {
+        while (true) {
+            long current = state.get();
+            if (count(current) == 0) {
+                return;
+            }
+            if (state.compareAndSet(current, pack(epoch(current) + 1, 0))) {
+                return;
+            }
+        }
+    }
+
+    public int pending() {
+        return count(state.get());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("pending", pending());
+        snapshot.put("flushSize", flushSizes.snapshot());
+        snapshot.put("waitMillis", waitTimes.snapshot());
+        return snapshot;
+    }
+
+    private void expire(int epoch) {
+        while (true) {
+            long current = state.get();
+            if (epoch(current) != epoch || count(current) == 0) {
+                return;
+            }
+            if (state.compareAndSet(current, pack(epoch + 1, 0))) {
+                flush(count(current));
+                return;
+            }
+        }
+    }
+
+    private void flush(int size) {
+        flushSizes.record(size);
+        waitTimes.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStartedAt));
+        flush.run();
+    }
+
+    private static long pack(int epoch, int count) {
+        return ((long) epoch << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    private static int epoch(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int count(long state) {
+        return (int) state;
+    }
+}
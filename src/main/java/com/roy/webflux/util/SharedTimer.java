@@ -0,0 +1,22 @@
+package com.roy.webflux.util;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// 애플리케이션 전체가 함께 사용하는 타이머다.
+// 요청마다 ScheduledFuture나 스레드를 만들지 않고 Netty의 HashedWheelTimer 하나에 모든 타임아웃을 등록한다.
+// HashedWheelTimer는 타임아웃을 바퀴 모양의 버킷에 나누어 담기 때문에 등록과 취소가 O(1)이며 10만 개 이상의 타임아웃도 스레드 하나로 처리한다.
+// 대신 tick 단위(10ms)보다 정밀한 시간은 보장하지 않는다.
+public final class SharedTimer {
+    private static final Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("shared-timer", true), 10, TimeUnit.MILLISECONDS, 512);
+
+    private SharedTimer() {}
+
+    public static Timer get() {
+        return TIMER;
+    }
+}
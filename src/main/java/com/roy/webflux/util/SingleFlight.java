@@ -0,0 +1,128 @@
+package com.roy.webflux.util;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// 같은 키에 대한 호출이 동시에 여러 번 들어오면 실제 호출은 한 번만 실행하고 나머지는 실행 중인 호출의 결과를 함께 받는다.
+// 처음 도착한 호출만 call을 실행하고 ConcurrentHashMap에 실행 중인 호출을 등록한다.
+// 호출이 끝나면 결과를 전달하기 전에 먼저 등록을 지우기 때문에 완료된 뒤에 도착한 호출은 이전 결과를 재사용하지 않고 새로 실행한다. (캐시가 아니다)
+// 호출한 쪽마다 별도의 future를 반환하기 때문에 하나의 호출자가 future를 취소하더라도 같은 결과를 기다리는 다른 호출자에게는 영향이 없다.
+// 기다리는 호출자의 수를 세어두고 모든 호출자가 취소하면 실행 중인 호출도 취소하여 아무도 기다리지 않는 원격 호출이 커넥션을 계속 잡고 있지 않도록 한다.
+// 모두 취소된 호출은 등록을 지우기 때문에 그 뒤에 도착한 호출은 취소된 호출에 합류하지 않고 새로 실행한다.
+// requests는 전체 호출 수, executions는 실제로 실행한 호출 수, collapsed는 실행 중인 호출에 합류한 호출 수다.
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    public ListenableFuture<V> execute(K key, Supplier<? extends ListenableFuture<V>> call) {
+        return execute(key, call, Supplier::get);
+    }
+
+    // 호출에 필요한 값을 context로 받는 버전이다. call이 요청마다 달라지는 값을 캡처하지 않아도 되므로
+    // CompletionPipeline처럼 한 번 만든 함수를 재사용하는 경우 요청마다 람다를 새로 만들지 않는다.
+    public <C> ListenableFuture<V> execute(K key, C context, Function<? super C, ? extends ListenableFuture<V>> call) {
+        requests.increment();
+        SettableListenableFuture<V> caller = new SettableListenableFuture<>();
+        Flight<V> flight = new Flight<>();
+        Flight<V> existing;
+        while ((existing = inFlight.putIfAbsent(key, flight)) != null) {
+            Flight<V> joined = existing;
+            if (joined.join(caller)) {
+                collapsed.increment();
+                joined.watch(caller, () -> inFlight.remove(key, joined));
+                return caller;
+            }
+            inFlight.remove(key, existing);
+        }
+        executions.increment();
+        flight.attach(caller);
+        try {
+            ListenableFuture<V> upstream = call.apply(context);
+            flight.upstream = upstream;
+            upstream.addCallback(result -> {
+                inFlight.remove(key, flight);
+                flight.complete(result, null);
+            }, ex -> {
+                inFlight.remove(key, flight);
+                flight.complete(null, ex);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.complete(null, e);
+        }
+        flight.watch(caller, () -> inFlight.remove(key, flight));
+        return caller;
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", requests.sum());
+        snapshot.put("executions", executions.sum());
+        snapshot.put("collapsed", collapsed.sum());
+        snapshot.put("inFlight", inFlight.size());
+        return snapshot;
+    }
+
+    // 실행 중인 호출 하나와 그 결과를 기다리는 호출자의 future다.
+    // 호출이 완료된 뒤에 합류하는 경우는 없지만(완료 전에 등록이 지워진다) 경쟁 상황을 대비하여 완료된 결과를 바로 전달한다.
+    // callers는 취소하지 않고 기다리는 호출자의 수이며 처음 실행한 호출자를 포함하여 1부터 시작한다.
+    // 0이 되면 다시 늘어나지 않기 때문에 이미 버려진 호출에는 합류할 수 없다.
+    private static final class Flight<V> {
+        private final SettableListenableFuture<V> shared = new SettableListenableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger(1);
+        private volatile ListenableFuture<V> upstream;
+
+        private boolean join(SettableListenableFuture<V> caller) {
+            int current;
+            do {
+                current = callers.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!callers.compareAndSet(current, current + 1));
+            attach(caller);
+            return true;
+        }
+
+        private void attach(SettableListenableFuture<V> caller) {
+            shared.addCallback(caller::set, caller::setException);
+        }
+
+        // 호출자가 future를 취소하면 callers를 줄이고 마지막 호출자였다면 등록을 지운 뒤 실행 중인 호출을 취소한다.
+        // 실행 중인 호출이 취소되어 전달되는 에러는 이미 취소된 호출자의 future에는 반영되지 않는다.
+        private void watch(SettableListenableFuture<V> caller, Runnable abandon) {
+            caller.addCallback(result -> {}, ex -> {
+                if (caller.isCancelled() && callers.decrementAndGet() == 0 && !shared.isDone()) {
+                    abandon.run();
+                    ListenableFuture<V> upstream = this.upstream;
+                    if (upstream != null) {
+                        upstream.cancel(true);
+                    }
+                }
+            });
+        }
+
+        private void complete(V result, Throwable ex) {
+            if (ex == null) {
+                shared.set(result);
+            } else {
+                shared.setException(ex);
+            }
+        }
+    }
+}
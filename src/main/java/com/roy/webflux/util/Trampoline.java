@@ -0,0 +1,52 @@
+package com.roy.webflux.util;
+
+import java.util.ArrayDeque;
+
+// 이미 완료된 future에 콜백을 등록하면 콜백이 같은 스택에서 바로 호출되기 때문에 Completion 체인의 단계가 모두 동기적으로 완료되면
+// run → addCallback → complete → next.run의 재귀 호출이 단계의 수만큼 깊어지고 결국 StackOverflowError가 발생한다.
+// Trampoline은 다음 단계를 바로 호출하지 않고 스레드별 큐에 넣은 뒤, 해당 스레드에서 가장 바깥쪽에 있는 execute 호출이 반복문으로 큐를 비운다.
+// 따라서 동기적으로 완료되는 단계가 수천 개 이어지더라도 스택의 깊이는 일정하게 유지된다.
+// 다른 스레드에서 완료된 future의 콜백은 그 스레드의 큐에서 실행되므로 스레드 사이에 큐를 공유하지 않고 락도 필요하지 않다.
+// 작업 중 하나가 예외를 던지더라도 큐에 남은 작업은 모두 실행하고, 마지막에 첫 번째 예외를 다시 던진다.
+final class Trampoline {
+    private static final ThreadLocal<Trampoline> CURRENT = ThreadLocal.withInitial(Trampoline::new);
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private boolean draining;
+
+    private Trampoline() {
+    }
+
+    static void execute(Runnable task) {
+        Trampoline trampoline = CURRENT.get();
+        trampoline.queue.add(task);
+        if (trampoline.draining) {
+            return;
+        }
+        trampoline.drain();
+    }
+
+    private void drain() {
+        draining = true;
+        RuntimeException failure = null;
+        try {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            draining = false;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -1,13 +1,43 @@
 package com.roy.webflux;
 
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 class WebfluxApplicationTests {
 
+	@Autowired
+	private MockMvc mvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	@DisplayName("0 이하의 timeout으로 대기하면 등록하지 않고 400으로 거절한다")
+	void nonPositiveTimeoutTest() throws Exception {
+		for (String timeout : List.of("0", "-1")) {
+			mvc.perform(get("/deferred-result").param("timeout", timeout))
+					.andExpect(status().isBadRequest());
+			mvc.perform(get("/deferred-result/{topic}", "news").param("timeout", timeout))
+					.andExpect(status().isBadRequest());
+		}
+
+		mvc.perform(get("/deferred-result/count"))
+				.andExpect(content().string("0"));
+		mvc.perform(get("/deferred-result/{topic}/count", "news"))
+				.andExpect(content().string("0"));
+	}
+
 }
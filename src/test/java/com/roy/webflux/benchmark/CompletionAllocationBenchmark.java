@@ -0,0 +1,120 @@
+package com.roy.webflux.benchmark;
+
+import com.roy.webflux.util.CompletionPipeline;
+import com.roy.webflux.util.CompletionV5;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// CallbackHellController의 v5와 같은 모양의 체인(호출 세 번, 에러 처리, 결과 전달)을 요청 하나마다 실행했을 때 할당되는 메모리와 시간을 비교한다.
+// completionV5는 요청마다 체인을 새로 만드는 CompletionV5, completableFuture는 callbackHellRefactoring과 같은 CompletableFuture 체인,
+// pipeline은 미리 만들어둔 CompletionPipeline 템플릿을 실행한 결과다.
+// 비동기 작업 자체의 할당은 비교 대상이 아니므로 첫 번째 호출만 요청마다 future를 만들어 체인을 구성한 뒤에 완료하고, 이후의 단계는 이미 완료된 같은 future를 반환한다.
+// 요청 하나당 할당량은 GC 프로파일러(-prof gc)의 gc.alloc.rate.norm(B/op)으로 비교한다.
+// ./gradlew jmh로 실행하거나 IDE에서 main을 실행한다.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CompletionAllocationBenchmark {
+    private static final ListenableFuture<String> DONE = done();
+
+    private static final CompletionPipeline<Request, Void> PIPELINE = CompletionPipeline
+            .<Request, String>from(request -> request.source)
+            .andApply((request, s1) -> DONE)
+            .andApply((request, s2) -> DONE)
+            .andError(Request::error)
+            .andAccept(Request::result);
+
+    @Benchmark
+    public int completionV5() {
+        Request request = new Request();
+        CompletionV5
+                .from(request.source)
+                .andApply(s1 -> DONE)
+                .andApply(s2 -> DONE)
+                .andError(request::error)
+                .andAccept(request::result);
+        return request.complete();
+    }
+
+    @Benchmark
+    public int completableFuture() {
+        Request request = new Request();
+        toCompletableFuture(request.source)
+                .thenCompose(s1 -> toCompletableFuture(DONE))
+                .thenCompose(s2 -> toCompletableFuture(DONE))
+                .thenAccept(request::result)
+                .exceptionally(ex -> {
+                    request.error(ex);
+                    return (Void) null;
+                });
+        return request.complete();
+    }
+
+    @Benchmark
+    public int pipeline() {
+        Request request = new Request();
+        PIPELINE.run(request);
+        return request.complete();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompletionAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> lf) {
+        CompletableFuture<T> cf = new CompletableFuture<>();
+        lf.addCallback(cf::complete, cf::completeExceptionally);
+        return cf;
+    }
+
+    private static ListenableFuture<String> done() {
+        SettableListenableFuture<String> future = new SettableListenableFuture<>();
+        future.set("hello");
+        return future;
+    }
+
+    // 요청마다 만들어지는 DeferredResult의 역할을 한다. 측정 대상은 모든 방법에서 같은 크기로 할당된다.
+    // 첫 번째 호출의 future를 완료한 뒤 결과가 전달되지 않았다면 체인이 잘못 연결된 것이므로 실패한다.
+    private static final class Request {
+        private final SettableListenableFuture<String> source = new SettableListenableFuture<>();
+        private int completed;
+
+        private int complete() {
+            source.set("hello");
+            if (completed != 1) {
+                throw new IllegalStateException("Chain did not complete");
+            }
+            return completed;
+        }
+
+        private void result(String value) {
+            completed++;
+        }
+
+        private void error(Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+}
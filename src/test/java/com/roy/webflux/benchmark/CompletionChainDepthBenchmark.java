@@ -0,0 +1,87 @@
+package com.roy.webflux.benchmark;
+
+import com.roy.webflux.util.CompletionPipeline;
+import com.roy.webflux.util.CompletionV5;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// 이미 완료된 future를 반환하는 단계 1만 개로 이루어진 체인을 실행하는 데 걸리는 시간을 측정한다.
+// 체인을 모두 연결한 뒤에 첫 번째 future를 완료하기 때문에 Trampoline이 없다면 단계의 수만큼 재귀 호출이 쌓인다.
+// 스택의 깊이가 일정하다는 것을 확인하기 위해 스택 크기를 256KB로 제한한 스레드에서 실행하며, StackOverflowError가 발생하거나
+// future가 콜백에서 발생한 StackOverflowError를 삼켜서 결과가 전달되지 않으면 실패로 기록한다.
+// JIT 워밍업을 위해 여러 번 반복하고 마지막 라운드의 결과를 기준으로 비교한다.
+@Slf4j
+public class CompletionChainDepthBenchmark {
+    private static final int STAGES = 10_000;
+    private static final int CHAINS = 100;
+    private static final int ROUNDS = 5;
+    private static final long STACK_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        CompletionPipeline<AtomicReference<Integer>, Void> pipeline = pipeline();
+        for (int round = 1; round <= ROUNDS; round++) {
+            log.info("Round {} completionV5: {}, pipeline: {}", round,
+                    measure(CompletionChainDepthBenchmark::completionV5),
+                    measure(() -> runPipeline(pipeline)));
+        }
+    }
+
+    private static Integer completionV5() {
+        SettableListenableFuture<Integer> source = new SettableListenableFuture<>();
+        AtomicReference<Integer> result = new AtomicReference<>();
+        CompletionV5<?, Integer> chain = CompletionV5.from(source);
+        for (int i = 0; i < STAGES; i++) {
+            chain = chain.andApply(value -> done(value + 1));
+        }
+        chain.andAccept(result::set);
+        source.set(0);
+        return result.get();
+    }
+
+    private static CompletionPipeline<AtomicReference<Integer>, Void> pipeline() {
+        CompletionPipeline<AtomicReference<Integer>, Integer> pipeline = CompletionPipeline.from(result -> done(0));
+        for (int i = 0; i < STAGES; i++) {
+            pipeline = pipeline.andApply((result, value) -> done(value + 1));
+        }
+        return pipeline.andAccept(AtomicReference::set);
+    }
+
+    private static Integer runPipeline(CompletionPipeline<AtomicReference<Integer>, Void> pipeline) {
+        AtomicReference<Integer> result = new AtomicReference<>();
+        pipeline.run(result);
+        return result.get();
+    }
+
+    private static String measure(Supplier<Integer> chain) throws InterruptedException {
+        AtomicReference<String> outcome = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < CHAINS; i++) {
+                    Integer result = chain.get();
+                    if (result == null || result != STAGES) {
+                        throw new IllegalStateException("Unexpected result " + result);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                outcome.set(String.format("%dus/chain", TimeUnit.NANOSECONDS.toMicros(elapsed) / CHAINS));
+            } catch (StackOverflowError | RuntimeException e) {
+                outcome.set("failed: " + e);
+            }
+        }, "chain-depth", STACK_SIZE);
+        thread.start();
+        thread.join();
+        return outcome.get();
+    }
+
+    private static ListenableFuture<Integer> done(Integer value) {
+        SettableListenableFuture<Integer> future = new SettableListenableFuture<>();
+        future.set(value);
+        return future;
+    }
+}
@@ -0,0 +1,112 @@
+package com.roy.webflux.benchmark;
+
+import com.roy.webflux.deferred.BroadcastJob;
+import com.roy.webflux.deferred.DeferredResultRegistry;
+import com.roy.webflux.deferred.ParallelBroadcaster;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 대기 중인 DeferredResult 10만 개를 처리하는 데 걸리는 시간을 비교한다.
+// drain은 대기 중인 요청 전체를 비우는 시간이고, remove는 그 중 1만 개가 타임아웃이나 연결 종료로 개별 제거되는 시간이다.
+// ConcurrentLinkedQueue는 앞에서부터 순서대로 비울 때는 빠르지만 중간에 있는 요청을 제거할 때마다 큐 전체를 탐색해야 한다.
+// parallel은 ParallelBroadcaster로 stripe마다 작업을 나누어 응답했을 때 브로드캐스트 시작부터 마지막 응답까지 걸린 시간이다.
+// JIT 워밍업을 위해 여러 번 반복하고 마지막 라운드의 결과를 기준으로 비교한다.
+@Slf4j
+public class DeferredDrainBenchmark {
+    private static final int PARKED = 100_000;
+    private static final int REMOVED = 10_000;
+    private static final int ROUNDS = 5;
+    private static final int BROADCAST_THREADS = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorService es = Executors.newFixedThreadPool(BROADCAST_THREADS);
+        for (int round = 1; round <= ROUNDS; round++) {
+            log.info("Round {} queue drain: {}ms, registry drain: {}ms, parallel: {}ms",
+                    round, drainQueue(), drainRegistry(), broadcastParallel(es));
+            log.info("Round {} queue remove: {}ms, registry remove: {}ms", round, removeQueue(), removeRegistry());
+        }
+        es.shutdown();
+    }
+
+    private static long drainQueue() {
+        Queue<DeferredResult<String>> results = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < PARKED; i++) {
+            results.add(new DeferredResult<>());
+        }
+        long start = System.nanoTime();
+        for (DeferredResult<String> dr : results) {
+            dr.setResult("Hello");
+            results.remove(dr);
+        }
+        return elapsed(start);
+    }
+
+    private static long drainRegistry() {
+        DeferredResultRegistry<String> results = newRegistry();
+        for (int i = 0; i < PARKED; i++) {
+            results.register(new DeferredResult<>());
+        }
+        long start = System.nanoTime();
+        results.drain(dr -> dr.setResult("Hello"));
+        return elapsed(start);
+    }
+
+    private static long broadcastParallel(ExecutorService es) throws InterruptedException {
+        DeferredResultRegistry<String> results = newRegistry();
+        for (int i = 0; i < PARKED; i++) {
+            results.register(new DeferredResult<>());
+        }
+        BroadcastJob job = new ParallelBroadcaster<String>(es, 1_000, 1).broadcast(results, "Hello");
+        while (!job.isDone()) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return job.getElapsedMillis();
+    }
+
+    private static long removeQueue() {
+        Queue<DeferredResult<String>> results = new ConcurrentLinkedQueue<>();
+        List<DeferredResult<String>> all = new ArrayList<>(PARKED);
+        for (int i = 0; i < PARKED; i++) {
+            DeferredResult<String> dr = new DeferredResult<>();
+            results.add(dr);
+            all.add(dr);
+        }
+        Collections.shuffle(all);
+        long start = System.nanoTime();
+        for (int i = 0; i < REMOVED; i++) {
+            results.remove(all.get(i));
+        }
+        return elapsed(start);
+    }
+
+    private static long removeRegistry() {
+        DeferredResultRegistry<String> results = newRegistry();
+        List<DeferredResultRegistry.Parked<String>> all = new ArrayList<>(PARKED);
+        for (int i = 0; i < PARKED; i++) {
+            all.add(results.register(new DeferredResult<>()));
+        }
+        Collections.shuffle(all);
+        long start = System.nanoTime();
+        for (int i = 0; i < REMOVED; i++) {
+            results.remove(all.get(i));
+        }
+        return elapsed(start);
+    }
+
+    private static DeferredResultRegistry<String> newRegistry() {
+        return new DeferredResultRegistry<>(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
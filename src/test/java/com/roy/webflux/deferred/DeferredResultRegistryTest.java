@@ -0,0 +1,104 @@
+package com.roy.webflux.deferred;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeferredResultRegistryTest {
+
+    @Test
+    @DisplayName("등록한 요청은 drain으로 모두 꺼낼 수 있다")
+    void drainTest() {
+        DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(8);
+        for (int i = 0; i < 1000; i++) {
+            registry.register(new DeferredResult<>());
+        }
+        assertEquals(1000, registry.size());
+
+        AtomicInteger completed = new AtomicInteger();
+        int drained = registry.drain(dr -> {
+            if (dr.setResult("Hello")) {
+                completed.incrementAndGet();
+            }
+        });
+
+        assertEquals(1000, drained);
+        assertEquals(1000, completed.get());
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    @DisplayName("제거된 요청은 drain 대상에서 빠진다")
+    void removeTest() {
+        DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(4);
+        DeferredResultRegistry.Parked<String> parked = registry.register(new DeferredResult<>());
+        registry.register(new DeferredResult<>());
+
+        assertTrue(registry.remove(parked));
+        assertFalse(registry.remove(parked));
+        assertEquals(1, registry.drain(dr -> dr.setResult("Hello")));
+        assertFalse(parked.getResult().hasResult());
+    }
+
+    @Test
+    @DisplayName("만료 시간이 지난 요청은 timeoutResult로 응답하고 제거된다")
+    void timeoutTest() throws InterruptedException {
+        DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(4);
+        DeferredResult<String> dr = new DeferredResult<>();
+        registry.register(dr, 50, "Timeout");
+
+        for (int i = 0; i < 100 && !dr.hasResult(); i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        assertEquals("Timeout", dr.getResult());
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    @DisplayName("만료 전에 drain된 요청은 타임아웃이 취소된다")
+    void cancelTimeoutTest() throws InterruptedException {
+        DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(4);
+        DeferredResult<String> dr = new DeferredResult<>();
+        registry.register(dr, 50, "Timeout");
+
+        registry.drain(result -> result.setResult("Hello"));
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals("Hello", dr.getResult());
+    }
+
+    @Test
+    @DisplayName("여러 스레드가 동시에 drain해도 요청은 한 번만 처리된다")
+    void concurrentDrainTest() throws InterruptedException {
+        DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(4);
+        for (int i = 0; i < 100_000; i++) {
+            registry.register(new DeferredResult<>());
+        }
+
+        int numberOfThreads = 8;
+        ExecutorService es = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+        AtomicInteger drained = new AtomicInteger();
+        for (int i = 0; i < numberOfThreads; i++) {
+            es.execute(() -> {
+                drained.addAndGet(registry.drain(dr -> dr.setResult("Hello")));
+                latch.countDown();
+            });
+        }
+        latch.await(10, TimeUnit.SECONDS);
+        es.shutdown();
+
+        assertEquals(100_000, drained.get());
+        assertEquals(0, registry.size());
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.roy.webflux.deferred;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelBroadcasterTest {
+
+    private static final int STRIPES = 4;
+    private static final int PARKED = 1000;
+
+    // 제출된 작업을 바로 실행하지 않고 쌓아두었다가 테스트에서 직접 실행하는 executor다.
+    private final Deque<Runnable> tasks = new ConcurrentLinkedDeque<>();
+    private final Executor executor = tasks::add;
+    private final DeferredResultRegistry<String> registry = new DeferredResultRegistry<>(STRIPES);
+    private final List<DeferredResult<String>> parked = new ArrayList<>();
+
+    private void park(int count) {
+        for (int i = 0; i < count; i++) {
+            DeferredResult<String> dr = new DeferredResult<>();
+            registry.register(dr);
+            parked.add(dr);
+        }
+    }
+
+    private int runTasks(boolean newestFirst) {
+        int executed = 0;
+        Runnable task;
+        while ((task = newestFirst ? tasks.pollLast() : tasks.pollFirst()) != null) {
+            task.run();
+            executed++;
+        }
+        return executed;
+    }
+
+    @Test
+    @DisplayName("브로드캐스트는 작업을 제출하고 바로 반환하며, stripe마다 하나의 작업으로 나누어 모든 요청에 응답한다")
+    void stripeTest() {
+        park(PARKED);
+        ParallelBroadcaster<String> broadcaster = new ParallelBroadcaster<>(executor, PARKED, 10);
+
+        BroadcastJob job = broadcaster.broadcast(registry, "Hello");
+
+        assertFalse(job.isDone());
+        assertEquals(STRIPES, job.getRemainingChunks());
+        assertTrue(parked.stream().noneMatch(DeferredResult::hasResult));
+
+        assertEquals(STRIPES, runTasks(false));
+        assertTrue(job.isDone());
+        assertEquals(0, job.getRemainingChunks());
+        assertEquals(STRIPES, job.getChunks());
+        assertEquals(PARKED, job.getCompleted());
+        assertEquals(0, job.getSkipped());
+        assertTrue(parked.stream().allMatch(dr -> "Hello".equals(dr.getResult())));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    @DisplayName("stripe에서 꺼낸 요청이 chunkSize개를 넘으면 청크를 추가하여 나누어 응답한다")
+    void chunkSizeTest() {
+        park(PARKED);
+        ParallelBroadcaster<String> broadcaster = new ParallelBroadcaster<>(executor, 1, 10);
+
+        BroadcastJob job = broadcaster.broadcast(registry, "Hello");
+
+        assertEquals(STRIPES + PARKED, runTasks(false));
+        assertTrue(job.isDone());
+        assertEquals(STRIPES + PARKED, job.getChunks());
+        assertEquals(PARKED, job.getCompleted());
+    }
+
+    @Test
+    @DisplayName("추가된 청크가 끝나기 전에는 작업이 완료된 것으로 보이지 않는다")
+    void doneAfterAddedChunksTest() {
+        park(PARKED);
+        ParallelBroadcaster<String> broadcaster = new ParallelBroadcaster<>(executor, 100, 10);
+
+        BroadcastJob job = broadcaster.broadcast(registry, "Hello");
+        for (int i = 0; i < STRIPES; i++) {
+            tasks.pollFirst().run();
+        }
+
+        assertFalse(job.isDone());
+        assertEquals(job.getChunks() - STRIPES, job.getRemainingChunks());
+        runTasks(false);
+        assertTrue(job.isDone());
+        assertEquals(PARKED, job.getCompleted());
+    }
+
+    @Test
+    @DisplayName("브로드캐스트가 겹쳐도 각 요청은 정확히 한 번만 응답받고, 이미 응답한 요청은 skipped로 센다")
+    void exactlyOnceTest() {
+        park(PARKED);
+        parked.get(0).setResult("Already");
+        ParallelBroadcaster<String> broadcaster = new ParallelBroadcaster<>(executor, 10, 10);
+
+        BroadcastJob first = broadcaster.broadcast(registry, "first");
+        BroadcastJob second = broadcaster.broadcast(registry, "second");
+        runTasks(true);
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(PARKED - 1, first.getCompleted() + second.getCompleted());
+        assertEquals(1, first.getSkipped() + second.getSkipped());
+        assertEquals("Already", parked.get(0).getResult());
+        assertTrue(parked.stream().allMatch(DeferredResult::hasResult));
+    }
+
+    @Test
+    @DisplayName("최근 maxJobs개의 작업만 id로 조회할 수 있다")
+    void jobHistoryTest() {
+        ParallelBroadcaster<String> broadcaster = new ParallelBroadcaster<>(executor, 10, 2);
+
+        BroadcastJob first = broadcaster.broadcast(registry, "first");
+        BroadcastJob second = broadcaster.broadcast(registry, "second");
+        BroadcastJob third = broadcaster.broadcast(registry, "third");
+        runTasks(false);
+
+        assertNull(broadcaster.getJob(first.getId()));
+        assertSame(second, broadcaster.getJob(second.getId()));
+        assertSame(third, broadcaster.getJob(third.getId()));
+        assertTrue(third.isDone());
+        assertEquals(0, third.getCompleted());
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.roy.webflux.deferred;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayBufferTest {
+
+    private final ReplayBuffer<String> buffer = new ReplayBuffer<>(4);
+
+    @Test
+    @DisplayName("마지막으로 받은 순서 번호 이후의 이벤트를 반환한다")
+    void sinceTest() {
+        buffer.append("a");
+        buffer.append("b");
+        buffer.append("c");
+
+        ReplayBuffer.Replay<String> replay = buffer.since(1);
+
+        assertEquals(2, replay.getEvents().size());
+        assertEquals("b", replay.getEvents().get(0).getValue());
+        assertEquals(3, replay.getLatest());
+        assertFalse(replay.isTruncated());
+    }
+
+    @Test
+    @DisplayName("놓친 이벤트가 없으면 비어있는 결과를 반환한다")
+    void upToDateTest() {
+        buffer.append("a");
+
+        assertTrue(buffer.since(1).isEmpty());
+    }
+
+    @Test
+    @DisplayName("덮어써진 이벤트를 요청하면 남아있는 이벤트와 함께 truncated를 반환한다")
+    void truncatedTest() {
+        for (int i = 1; i <= 10; i++) {
+            buffer.append("event-" + i);
+        }
+
+        ReplayBuffer.Replay<String> replay = buffer.since(2);
+
+        assertTrue(replay.isTruncated());
+        assertEquals(4, replay.getEvents().size());
+        assertEquals(7, replay.getEvents().get(0).getSequence());
+        assertEquals(10, replay.getLatest());
+    }
+
+    @Test
+    @DisplayName("서버가 알고 있는 것보다 큰 순서 번호는 truncated로 처리한다")
+    void unknownSequenceTest() {
+        buffer.append("a");
+
+        ReplayBuffer.Replay<String> replay = buffer.since(100);
+
+        assertTrue(replay.isTruncated());
+        assertEquals(1, replay.getEvents().size());
+    }
+
+}
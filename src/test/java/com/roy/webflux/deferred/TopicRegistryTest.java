@@ -0,0 +1,70 @@
+package com.roy.webflux.deferred;
+
+import com.roy.webflux.util.ManualTimer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopicRegistryTest {
+
+    private final ManualTimer timer = new ManualTimer();
+    private final TopicRegistry<String> topics = new TopicRegistry<>(2, timer);
+
+    @Test
+    @DisplayName("발행한 토픽의 대기자만 응답을 받는다")
+    void publishTest() {
+        DeferredResult<String> news = new DeferredResult<>();
+        DeferredResult<String> sports = new DeferredResult<>();
+        topics.register("news", news, 10_000, "Timeout");
+        topics.register("sports", sports, 10_000, "Timeout");
+
+        assertEquals(1, topics.publish("news", dr -> dr.setResult("Hello news")));
+
+        assertEquals("Hello news", news.getResult());
+        assertFalse(sports.hasResult());
+        assertEquals(1, topics.size("sports"));
+    }
+
+    @Test
+    @DisplayName("대기자가 모두 빠진 토픽은 삭제된다")
+    void removeEmptyTopicTest() {
+        topics.register("news", new DeferredResult<>(), 10_000, "Timeout");
+        assertEquals(1, topics.topicCount());
+
+        topics.publish("news", dr -> dr.setResult("Hello"));
+
+        assertEquals(0, topics.topicCount());
+        assertEquals(0, topics.publish("news", dr -> dr.setResult("Hello")));
+    }
+
+    @Test
+    @DisplayName("발행 없이 타임아웃으로 비워진 토픽은 주기적인 정리 작업에서 삭제된다")
+    void sweepTest() {
+        DeferredResult<String> news = new DeferredResult<>();
+        topics.register("news", news, 100, "Timeout");
+
+        timer.advance(100);
+        assertEquals("Timeout", news.getResult());
+        assertEquals(0, topics.size("news"));
+        assertEquals(1, topics.topicCount());
+
+        timer.advance(10_000);
+        assertEquals(0, topics.topicCount());
+        assertEquals(1, timer.pending());
+    }
+
+    @Test
+    @DisplayName("close하면 정리 작업을 취소하고 다시 등록하지 않는다")
+    void closeTest() {
+        assertEquals(1, timer.pending());
+
+        topics.close();
+
+        assertEquals(0, timer.pending());
+        timer.advance(30_000);
+        assertEquals(0, timer.pending());
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.roy.webflux.executor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HybridExecutorTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(2, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    @Test
+    @DisplayName("비용이 작은 작업은 호출한 스레드에서 바로 실행한다")
+    void inlineTest() {
+        HybridExecutor executor = new HybridExecutor("cheap", pool, 10_000, 4);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> ranOn.set(Thread.currentThread()));
+        }
+
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(100L, executor.snapshot().get("inlined"));
+        assertEquals(0L, executor.snapshot().get("offloaded"));
+    }
+
+    @Test
+    @DisplayName("추정 비용이 기준을 넘으면 풀로 넘긴다")
+    void offloadTest() throws InterruptedException {
+        HybridExecutor executor = new HybridExecutor("expensive", pool, 100, 4);
+        executor.execute(() -> sleep(20));
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            ranOn.set(Thread.currentThread());
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), ranOn.get());
+        assertEquals(1L, executor.snapshot().get("inlined"));
+        assertEquals(1L, executor.snapshot().get("offloaded"));
+    }
+
+    @Test
+    @DisplayName("중첩된 깊이가 maxInlineDepth를 넘으면 풀로 넘긴다")
+    void depthTest() throws InterruptedException {
+        HybridExecutor executor = new HybridExecutor("nested", pool, 10_000, 2);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        executor.execute(() -> executor.execute(() -> executor.execute(latch::countDown)));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(2L, executor.snapshot().get("inlined"));
+        assertEquals(1L, executor.snapshot().get("offloaded"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.roy.webflux.executor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManagedTaskExecutorTest {
+
+    private final CountDownLatch running = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ManagedTaskExecutor executor;
+
+    // 스레드 하나와 크기가 1인 큐를 사용하고, 스레드가 작업을 실행 중인 상태에서 큐를 채운다.
+    private Future<String> fill(RejectionPolicy rejectionPolicy) throws InterruptedException {
+        executor = new ManagedTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectionPolicy(rejectionPolicy);
+        executor.initialize();
+
+        executor.submit(() -> {
+            running.countDown();
+            release.await();
+            return "running";
+        });
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        return executor.submit(() -> "oldest");
+    }
+
+    @Test
+    @DisplayName("ABORT는 큐가 가득 차면 새로운 작업을 거절한다")
+    void abortTest() throws Exception {
+        Future<String> oldest = fill(RejectionPolicy.ABORT);
+        try {
+            assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> "newest"));
+            release.countDown();
+
+            assertEquals("oldest", oldest.get(1, TimeUnit.SECONDS));
+            Map<String, Object> snapshot = executor.snapshot();
+            assertEquals(1L, snapshot.get("rejected"));
+            assertEquals(0L, snapshot.get("discarded"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("DISCARD_OLDEST는 가장 오래 기다린 작업을 버리면서 개수를 집계하고 작업의 Future를 취소한다")
+    void discardOldestTest() throws Exception {
+        Future<String> oldest = fill(RejectionPolicy.DISCARD_OLDEST);
+        try {
+            Future<String> newest = executor.submit(() -> "newest");
+
+            assertTrue(oldest.isCancelled());
+            Map<String, Object> snapshot = executor.snapshot();
+            assertEquals(1L, snapshot.get("rejected"));
+            assertEquals(1L, snapshot.get("discarded"));
+            assertEquals(1, snapshot.get("queueDepth"));
+
+            release.countDown();
+            assertEquals("newest", newest.get(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.roy.webflux.executor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// 컨트롤러가 반환한 Callable은 AsyncExecutionConfig가 등록한 ManagedTaskExecutor에서 실행된다.
+// 스레드 하나와 크기가 1인 큐를 채운 뒤에 들어온 요청이 TaskRejectedAdvice에 의해 503과 Retry-After로 응답하는지 확인한다.
+@SpringBootTest(classes = TaskRejectedAdviceTest.TestConfig.class,
+        properties = {"spring.main.web-application-type=servlet", "async.mode=pool", "executor.retry-after-seconds=3"})
+@AutoConfigureMockMvc
+public class TaskRejectedAdviceTest {
+
+    @Configuration
+    @EnableAutoConfiguration
+    @Import({AsyncExecutionConfig.class, TaskRejectedAdvice.class, BlockingController.class})
+    static class TestConfig {
+        @Bean
+        ManagedTaskExecutor tinyExecutor() {
+            ManagedTaskExecutor executor = new ManagedTaskExecutor();
+            executor.setCorePoolSize(1);
+            executor.setMaxPoolSize(1);
+            executor.setQueueCapacity(1);
+            executor.setRejectionPolicy(RejectionPolicy.ABORT);
+            executor.setThreadNamePrefix("tiny-");
+            return executor;
+        }
+    }
+
+    @RestController
+    static class BlockingController {
+        private final CountDownLatch running = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @GetMapping("/blocking")
+        public Callable<String> blocking() {
+            return () -> {
+                running.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return "HELLO";
+            };
+        }
+    }
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private BlockingController controller;
+    @Autowired
+    private ManagedTaskExecutor tinyExecutor;
+
+    @Test
+    @DisplayName("executor의 스레드와 큐가 가득 차서 거절된 Callable은 503과 Retry-After 헤더로 응답한다")
+    void rejectedCallableTest() throws Exception {
+        try {
+            MvcResult first = mvc.perform(get("/blocking")).andReturn();
+            assertTrue(controller.running.await(1, TimeUnit.SECONDS));
+            MvcResult queued = mvc.perform(get("/blocking")).andReturn();
+
+            MvcResult rejected = mvc.perform(get("/blocking")).andReturn();
+            mvc.perform(asyncDispatch(rejected))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+
+            Map<String, Object> snapshot = tinyExecutor.snapshot();
+            assertEquals(1L, snapshot.get("rejected"));
+
+            controller.release.countDown();
+            mvc.perform(asyncDispatch(first)).andExpect(status().isOk());
+            mvc.perform(asyncDispatch(queued)).andExpect(status().isOk());
+        } finally {
+            controller.release.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.roy.webflux.mvc.controller;
+
+import com.roy.webflux.mvc.controller.MyService.MultiResult;
+import com.roy.webflux.mvc.controller.MyService.MyController;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MyServiceMultiTest {
+
+    private static final Duration DEADLINE = Duration.ofSeconds(5);
+
+    @Test
+    @DisplayName("ids는 범위 또는 쉼표로 구분한 목록으로 받는다")
+    void parseIdsTest() {
+        assertEquals(List.of("1", "2", "3"), MyController.parseIds("1..3", 10));
+        assertEquals(List.of("7"), MyController.parseIds(" 7 .. 7 ", 10));
+        assertEquals(List.of("1", "a", "3"), MyController.parseIds(" 1, a,,3 ", 10));
+    }
+
+    @Test
+    @DisplayName("거꾸로 된 범위, 숫자가 아닌 범위, 너무 많은 id는 400으로 거절한다")
+    void parseIdsRejectTest() {
+        for (String ids : List.of("5..1", "a..3", "1..", "1..11", "1,2,3,4,5,6,7,8,9,10,11")) {
+            ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> MyController.parseIds(ids, 10), ids);
+            assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus(), ids);
+        }
+    }
+
+    @Test
+    @DisplayName("동시에 호출하는 수는 concurrency를 넘지 않는다")
+    void concurrencyBoundTest() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<MultiResult> results = MyController.scatterGather(MyController.parseIds("1..100", 100), false, 8, DEADLINE,
+                id -> Mono.defer(() -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return Mono.delay(Duration.ofMillis(5)).map(tick -> "remote-service-1: " + id);
+                }).doFinally(signal -> inFlight.decrementAndGet()))
+                .collectList()
+                .block(DEADLINE);
+
+        assertNotNull(results);
+        assertEquals(100, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getError() == null));
+        assertTrue(maxInFlight.get() <= 8, "maxInFlight: " + maxInFlight.get());
+        assertEquals(8, maxInFlight.get());
+    }
+
+    @Test
+    @DisplayName("ordered=true이면 응답이 늦게 오더라도 요청한 순서대로 내려보낸다")
+    void orderedTest() {
+        List<MultiResult> results = MyController.scatterGather(List.of("30", "1", "10"), true, 3, DEADLINE,
+                id -> Mono.delay(Duration.ofMillis(Long.parseLong(id))).map(tick -> id))
+                .collectList()
+                .block(DEADLINE);
+
+        assertNotNull(results);
+        assertEquals(List.of("30", "1", "10"), results.stream().map(MultiResult::getBody).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("deadline이 지나면 진행 중인 호출을 취소하고 응답한 항목과 Deadline exceeded 항목을 함께 반환한다")
+    void partialResultOnDeadlineTest() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        List<MultiResult> results = MyController.scatterGather(List.of("1", "slow", "3", "fail"), false, 4, Duration.ofMillis(200),
+                id -> {
+                    if (id.equals("slow")) {
+                        return Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+                    }
+                    if (id.equals("fail")) {
+                        return Mono.error(new IllegalStateException("remote-service-1 failed"));
+                    }
+                    return Mono.just("remote-service-1: " + id);
+                })
+                .collectList()
+                .block(DEADLINE);
+
+        assertNotNull(results);
+        assertEquals(4, results.size());
+        assertTrue(cancelled.get());
+        Map<String, MultiResult> byId = results.stream().collect(Collectors.toMap(MultiResult::getId, result -> result));
+        assertEquals("remote-service-1: 1", byId.get("1").getBody());
+        assertEquals("remote-service-1: 3", byId.get("3").getBody());
+        assertEquals("remote-service-1 failed", byId.get("fail").getError());
+        assertEquals("Deadline exceeded", byId.get("slow").getError());
+        assertNull(byId.get("slow").getBody());
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(MultiResult::getIndex).sorted(Comparator.naturalOrder()).collect(Collectors.toList()));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.roy.webflux.mvc.controller;
+
+import com.roy.webflux.mvc.controller.simulator.RemoteSimulator;
+import com.roy.webflux.mvc.controller.simulator.RouteProfile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 느린 본문이 실제 서블릿 응답에서 조각마다 flush되는지는 톰캣을 띄워서 도착 시간으로만 확인할 수 있다.
+@SpringBootTest(classes = RemoteService.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "remote.simulator.mode=timer"})
+public class RemoteServiceTest {
+
+    private static final int CHUNKS = 5;
+    private static final long CHUNK_DELAY = 200;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private RemoteSimulator simulator;
+
+    @Test
+    @DisplayName("느린 본문은 조각마다 flush되어 조각이 만들어지는 간격으로 클라이언트에 도착한다")
+    void slowBodyFlushTest() {
+        RouteProfile profile = RouteProfile.fixed(0);
+        profile.setSlowBodyRate(1);
+        profile.setSlowBodyChunks(CHUNKS);
+        profile.setSlowBodyChunkDelayMs(CHUNK_DELAY);
+        simulator.program("remote-service-2", profile);
+
+        StringBuilder body = new StringBuilder();
+        long start = System.nanoTime();
+        List<Long> arrivals = WebClient.create("http://localhost:" + port)
+                .get()
+                .uri("/remote-service-2/{request}", "slow")
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .map(buffer -> {
+                    body.append(buffer.toString(StandardCharsets.UTF_8));
+                    DataBufferUtils.release(buffer);
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                })
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertEquals("remote-service-2: slow", body.toString());
+        assertNotNull(arrivals);
+        // 끝에서 한 번만 flush하면 모든 조각이 CHUNKS * CHUNK_DELAY 뒤에 함께 도착한다.
+        assertTrue(arrivals.size() >= 2, "arrivals: " + arrivals);
+        assertTrue(arrivals.get(0) < (CHUNKS - 1) * CHUNK_DELAY, "arrivals: " + arrivals);
+        assertTrue(arrivals.get(arrivals.size() - 1) - arrivals.get(0) >= (CHUNKS - 2) * CHUNK_DELAY, "arrivals: " + arrivals);
+    }
+
+}
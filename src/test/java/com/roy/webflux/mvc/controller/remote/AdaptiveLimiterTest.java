@@ -0,0 +1,139 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveLimiterTest {
+
+    private static final long RTT = 10;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private AdaptiveLimiter limiter(int initialLimit, int minLimit, int maxLimit, int maxQueue) {
+        return new AdaptiveLimiter("route", initialLimit, minLimit, maxLimit, maxQueue, 1_000, now::get);
+    }
+
+    // limit만큼의 호출을 동시에 보내고 시계를 rttMillis만큼 진행한 뒤 모두 성공시킨다.
+    private void round(AdaptiveLimiter limiter, long rttMillis) {
+        List<Sinks.One<String>> calls = new ArrayList<>();
+        int limit = limit(limiter);
+        for (int i = 0; i < limit; i++) {
+            Sinks.One<String> call = Sinks.one();
+            calls.add(call);
+            limiter.execute(call::asMono).subscribe();
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        calls.forEach(call -> call.tryEmitValue("remote-service-1"));
+    }
+
+    private static int limit(AdaptiveLimiter limiter) {
+        return (int) limiter.snapshot().get("limit");
+    }
+
+    @Test
+    @DisplayName("응답 시간이 일정하면 limit을 늘리고 응답 시간이 늘어나면 limit을 줄인다")
+    void gradientTest() {
+        AdaptiveLimiter limiter = limiter(10, 1, 1_000, 0);
+
+        for (int i = 0; i < 5; i++) {
+            round(limiter, RTT);
+        }
+        int grown = limit(limiter);
+        assertTrue(grown > 10, "limit: " + grown);
+
+        round(limiter, RTT * 10);
+        int shrunk = limit(limiter);
+        assertTrue(shrunk < grown, "limit: " + shrunk);
+    }
+
+    @Test
+    @DisplayName("limit은 minLimit과 maxLimit 사이로 제한한다")
+    void clampTest() {
+        AdaptiveLimiter growing = limiter(10, 1, 12, 0);
+        for (int i = 0; i < 20; i++) {
+            round(growing, RTT);
+        }
+        assertEquals(12, limit(growing));
+
+        AdaptiveLimiter shrinking = limiter(10, 8, 1_000, 0);
+        round(shrinking, RTT);
+        for (int i = 0; i < 20; i++) {
+            round(shrinking, RTT * 10);
+        }
+        assertEquals(8, limit(shrinking));
+    }
+
+    @Test
+    @DisplayName("limit을 넘어선 호출은 maxQueue개까지 대기하고 그보다 많으면 바로 거절한다")
+    void queueTest() {
+        AdaptiveLimiter limiter = limiter(2, 2, 2, 2);
+        AtomicInteger started = new AtomicInteger();
+        List<Sinks.One<String>> calls = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            Sinks.One<String> call = Sinks.one();
+            calls.add(call);
+            limiter.execute(() -> {
+                started.incrementAndGet();
+                return call.asMono();
+            }).subscribe(value -> {}, errors::add);
+        }
+
+        assertEquals(2, started.get());
+        assertEquals(2, limiter.snapshot().get("inFlight"));
+        assertEquals(2, limiter.snapshot().get("queueDepth"));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        assertEquals(1L, limiter.snapshot().get("dropped"));
+
+        calls.get(0).tryEmitValue("remote-service-1");
+
+        assertEquals(3, started.get());
+        assertEquals(2, limiter.snapshot().get("inFlight"));
+        assertEquals(1, limiter.snapshot().get("queueDepth"));
+    }
+
+    @Test
+    @DisplayName("대기 중이거나 실행 중인 호출이 취소되면 자리를 반납하고 다음 호출을 실행한다")
+    void cancelTest() {
+        AdaptiveLimiter limiter = limiter(1, 1, 1, 2);
+        AtomicInteger started = new AtomicInteger();
+        List<Disposable> subscriptions = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> call = Sinks.one();
+            subscriptions.add(limiter.execute(() -> {
+                started.incrementAndGet();
+                return call.asMono();
+            }).subscribe());
+        }
+        assertEquals(1, started.get());
+        assertEquals(2, limiter.snapshot().get("queueDepth"));
+
+        subscriptions.get(1).dispose();
+        assertEquals(1, limiter.snapshot().get("queueDepth"));
+        assertEquals(1, started.get());
+
+        subscriptions.get(0).dispose();
+        assertEquals(2, started.get());
+        assertEquals(1, limiter.snapshot().get("inFlight"));
+        assertEquals(0, limiter.snapshot().get("queueDepth"));
+
+        subscriptions.get(2).dispose();
+        assertEquals(0, limiter.snapshot().get("inFlight"));
+        assertEquals(1, limit(limiter));
+    }
+
+}
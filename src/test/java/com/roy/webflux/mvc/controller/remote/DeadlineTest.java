@@ -0,0 +1,41 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineTest {
+
+    @Test
+    @DisplayName("헤더 값이 없으면 기본값을, 최대값보다 크면 최대값을 사용한다")
+    void fromHeaderTest() {
+        assertTrue(Deadline.fromHeader(null, 1_000, 5_000).remainingMillis() <= 1_000);
+        assertTrue(Deadline.fromHeader(null, 1_000, 5_000).remainingMillis() > 900);
+        assertTrue(Deadline.fromHeader(60_000L, 1_000, 5_000).remainingMillis() <= 5_000);
+    }
+
+    @Test
+    @DisplayName("남은 시간이 없으면 만료되고 check는 DeadlineExceededException을 던진다")
+    void expireTest() throws InterruptedException {
+        Deadline deadline = Deadline.after(20);
+        assertFalse(deadline.isExpired());
+
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+        assertThrows(DeadlineExceededException.class, () -> deadline.check("remote-service-1"));
+    }
+
+    @Test
+    @DisplayName("제한이 없는 Deadline은 만료되지 않는다")
+    void noneTest() {
+        assertFalse(Deadline.none().isBounded());
+        assertFalse(Deadline.none().isExpired());
+        assertEquals(Long.MAX_VALUE, Deadline.none().remainingMillis());
+    }
+
+}
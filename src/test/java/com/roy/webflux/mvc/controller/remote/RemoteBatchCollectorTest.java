@@ -0,0 +1,122 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import com.roy.webflux.util.ManualTimer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteBatchCollectorTest {
+
+    private static final int MAX_SIZE = 3;
+    private static final long MAX_WAIT = 10;
+
+    private final ManualTimer timer = new ManualTimer();
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final List<Sinks.One<Map<String, String>>> responses = new CopyOnWriteArrayList<>();
+    private final RemoteBatchCollector collector = new RemoteBatchCollector(this::batchCall, MAX_SIZE, MAX_WAIT, timer);
+
+    private Mono<Map<String, String>> batchCall(List<String> ids) {
+        Sinks.One<Map<String, String>> response = Sinks.one();
+        batches.add(ids);
+        responses.add(response);
+        return response.asMono();
+    }
+
+    private static Map<String, String> results(String... ids) {
+        Map<String, String> results = new HashMap<>();
+        for (String id : ids) {
+            results.put(id, "remote-service-1: " + id);
+        }
+        return results;
+    }
+
+    @Test
+    @DisplayName("max-size개가 모이면 타이머를 기다리지 않고 한 번의 배치 요청으로 보낸다")
+    void sizeFlushTest() throws Exception {
+        CompletableFuture<String> first = collector.submit("1");
+        CompletableFuture<String> second = collector.submit("2");
+        assertTrue(batches.isEmpty());
+        CompletableFuture<String> third = collector.submit("3");
+
+        assertEquals(Collections.singletonList(Arrays.asList("1", "2", "3")), batches);
+        responses.get(0).tryEmitValue(results("1", "2", "3"));
+
+        assertEquals("remote-service-1: 1", first.get(1, TimeUnit.SECONDS));
+        assertEquals("remote-service-1: 2", second.get(1, TimeUnit.SECONDS));
+        assertEquals("remote-service-1: 3", third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("첫 요청이 max-wait-ms 동안 기다리면 모인 요청만으로 배치 요청을 보낸다")
+    void timeFlushTest() throws Exception {
+        CompletableFuture<String> first = collector.submit("1");
+
+        timer.advance(MAX_WAIT - 1);
+        assertTrue(batches.isEmpty());
+        timer.advance(1);
+
+        assertEquals(Collections.singletonList(Collections.singletonList("1")), batches);
+        responses.get(0).tryEmitValue(results("1"));
+        assertEquals("remote-service-1: 1", first.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("같은 id는 한 번만 보내고 결과를 함께 받으며 응답에 없는 id는 해당 요청만 실패한다")
+    void fanOutTest() throws Exception {
+        CompletableFuture<String> first = collector.submit("1");
+        CompletableFuture<String> duplicate = collector.submit("1");
+        CompletableFuture<String> missing = collector.submit("2");
+
+        assertEquals(Collections.singletonList(Arrays.asList("1", "2")), batches);
+        responses.get(0).tryEmitValue(results("1"));
+
+        assertEquals("remote-service-1: 1", first.get(1, TimeUnit.SECONDS));
+        assertEquals("remote-service-1: 1", duplicate.get(1, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> missing.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    @DisplayName("배치 요청이 실패하면 배치에 포함된 모든 요청이 같은 에러로 실패한다")
+    void batchFailureTest() {
+        List<CompletableFuture<String>> futures = Arrays.asList(collector.submit("1"), collector.submit("2"), collector.submit("3"));
+        IllegalStateException failure = new IllegalStateException("Remote error");
+
+        responses.get(0).tryEmitError(failure);
+
+        for (CompletableFuture<String> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    @DisplayName("성공한 배치 요청의 응답 시간과 flush된 배치의 크기를 기록한다")
+    @SuppressWarnings("unchecked")
+    void histogramTest() {
+        collector.submit("1");
+        collector.submit("2");
+        collector.submit("3");
+        responses.get(0).tryEmitValue(results("1", "2", "3"));
+
+        Map<String, Object> snapshot = collector.snapshot();
+        assertEquals(1L, ((Map<String, Object>) snapshot.get("batchLatencyMillis")).get("count"));
+        assertEquals(1L, ((Map<String, Object>) snapshot.get("flushSize")).get("count"));
+        assertEquals(3L, ((Map<String, Object>) snapshot.get("flushSize")).get("max"));
+        assertEquals(0, snapshot.get("queued"));
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.roy.webflux.mvc.controller.remote;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteResponseCacheTest {
+
+    private static final String URL = "http://localhost:8081/remote-service-1/{request}";
+    private static final long TTL = 1_000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+    private final RemoteResponseCache cache = new RemoteResponseCache(this::load, TTL, 1_000_000, clock::get, Runnable::run);
+
+    // 원격 호출을 대신하며, 호출마다 응답을 직접 보낼 수 있는 Sinks.One과 구독이 취소되었는지를 기록한다.
+    private static final class Call {
+        private final Sinks.One<ResponseEntity<String>> response = Sinks.one();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private void respond(String body) {
+            response.tryEmitValue(ResponseEntity.ok(body));
+        }
+    }
+
+    private Mono<ResponseEntity<String>> load(Deadline deadline, String url, Object... uriVariables) {
+        Call call = new Call();
+        calls.add(call);
+        return call.response.asMono().doOnCancel(() -> call.cancelled.set(true));
+    }
+
+    private ListenableFuture<ResponseEntity<String>> get(String request) {
+        return cache.getForEntity(URL, request);
+    }
+
+    private static String body(ListenableFuture<ResponseEntity<String>> future) throws Exception {
+        return future.get(1, TimeUnit.SECONDS).getBody();
+    }
+
+    @Test
+    @DisplayName("캐시에 없는 같은 키로 동시에 조회하면 원격 호출은 한 번만 보낸다")
+    void sharedMissTest() throws Exception {
+        List<ListenableFuture<ResponseEntity<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(get("1"));
+        }
+
+        assertEquals(1, calls.size());
+        calls.get(0).respond("remote-service-1: 1");
+
+        for (ListenableFuture<ResponseEntity<String>> future : futures) {
+            assertEquals("remote-service-1: 1", body(future));
+        }
+        assertEquals("remote-service-1: 1", body(get("1")));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    @DisplayName("캐시 적중과 실패 횟수를 센다")
+    void statsTest() throws Exception {
+        ListenableFuture<ResponseEntity<String>> first = get("1");
+        calls.get(0).respond("remote-service-1: 1");
+        body(first);
+        body(get("1"));
+        body(get("1"));
+
+        Map<String, Object> snapshot = cache.snapshot();
+        assertEquals(2L, snapshot.get("hits"));
+        assertEquals(1L, snapshot.get("misses"));
+        assertEquals(1L, snapshot.get("size"));
+    }
+
+    @Test
+    @DisplayName("ttl이 지나면 만료되어 다시 원격 호출을 보낸다")
+    void ttlTest() throws Exception {
+        ListenableFuture<ResponseEntity<String>> first = get("1");
+        calls.get(0).respond("remote-service-1: 1");
+        body(first);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL - 1));
+        body(get("1"));
+        assertEquals(1, calls.size());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        ListenableFuture<ResponseEntity<String>> expired = get("1");
+        assertEquals(2, calls.size());
+        calls.get(1).respond("remote-service-1: 1 again");
+        assertEquals("remote-service-1: 1 again", body(expired));
+    }
+
+    @Test
+    @DisplayName("weight의 합이 maximum-weight를 넘으면 항목을 제거한다")
+    void weightEvictionTest() throws Exception {
+        RemoteResponseCache small = new RemoteResponseCache(
+                (deadline, url, uriVariables) -> Mono.just(ResponseEntity.ok("0123456789")), TTL, 500, clock::get, Runnable::run);
+        for (int i = 0; i < 100; i++) {
+            small.getForEntity(URL, i).get(1, TimeUnit.SECONDS);
+        }
+
+        Map<String, Object> snapshot = small.snapshot();
+        assertTrue((Long) snapshot.get("evictions") > 0, snapshot.toString());
+        assertTrue((Long) snapshot.get("size") < 100, snapshot.toString());
+    }
+
+    @Test
+    @DisplayName("복사본 하나를 취소해도 같은 응답을 기다리는 다른 호출자와 원격 호출에는 영향이 없다")
+    void cancelOneCopyTest() throws Exception {
+        ListenableFuture<ResponseEntity<String>> cancelled = get("1");
+        ListenableFuture<ResponseEntity<String>> waiting = get("1");
+
+        assertTrue(cancelled.cancel(true));
+        assertFalse(calls.get(0).cancelled.get());
+        calls.get(0).respond("remote-service-1: 1");
+
+        assertEquals("remote-service-1: 1", body(waiting));
+        assertEquals("remote-service-1: 1", body(get("1")));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    @DisplayName("마지막 복사본이 취소되어야 원격 호출을 취소하고, 취소된 호출은 캐시에서 제거되어 다시 호출한다")
+    void cancelAllCopiesTest() throws Exception {
+        ListenableFuture<ResponseEntity<String>> first = get("1");
+        ListenableFuture<ResponseEntity<String>> second = get("1");
+
+        first.cancel(true);
+        assertFalse(calls.get(0).cancelled.get());
+        second.cancel(true);
+        assertTrue(calls.get(0).cancelled.get());
+
+        ListenableFuture<ResponseEntity<String>> reloaded = get("1");
+        assertEquals(2, calls.size());
+        calls.get(1).respond("remote-service-1: 1");
+        assertEquals("remote-service-1: 1", body(reloaded));
+    }
+
+    @Test
+    @DisplayName("getBody를 구독한 쪽이 취소하면 복사본을 취소한 것으로 본다")
+    void cancelBodySubscriptionTest() {
+        cache.getBody(URL, "1").subscribe().dispose();
+
+        assertEquals(1, calls.size());
+        assertTrue(calls.get(0).cancelled.get());
+    }
+
+    @Test
+    @DisplayName("실패한 원격 호출은 캐시에서 제거되어 다음 조회에서 다시 호출한다")
+    void failedLoadTest() throws Exception {
+        ListenableFuture<ResponseEntity<String>> failed = get("1");
+        calls.get(0).response.tryEmitError(new IllegalStateException("remote-service-1 failed"));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+        assertEquals("remote-service-1 failed", ex.getCause().getMessage());
+
+        ListenableFuture<ResponseEntity<String>> reloaded = get("1");
+        assertEquals(2, calls.size());
+        calls.get(1).respond("remote-service-1: 1");
+        assertEquals("remote-service-1: 1", body(reloaded));
+    }
+
+    @Test
+    @DisplayName("조회와 취소가 동시에 일어나도 기다리는 호출자가 남아있는 원격 호출은 취소하지 않는다")
+    void concurrentJoinLeaveTest() throws Exception {
+        int numberOfThreads = 16;
+        ExecutorService es = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            es.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 1_000; j++) {
+                        get("1").cancel(true);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        ListenableFuture<ResponseEntity<String>> kept = get("1");
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        es.shutdown();
+
+        // 모든 원격 호출은 하나 이상의 호출자가 합류하므로, kept가 기다리는 호출을 제외한 나머지는 마지막 호출자가 취소할 때 함께 취소된다.
+        List<Call> alive = new ArrayList<>();
+        for (Call call : calls) {
+            if (!call.cancelled.get()) {
+                alive.add(call);
+            }
+        }
+        assertEquals(1, alive.size());
+        alive.get(0).respond("remote-service-1: 1");
+        assertEquals("remote-service-1: 1", body(kept));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyDistributionTest {
+
+    private LatencyDistribution percentiles() {
+        TreeMap<Double, Long> percentiles = new TreeMap<>();
+        percentiles.put(0.5, 20L);
+        percentiles.put(0.9, 80L);
+        percentiles.put(0.99, 400L);
+        percentiles.put(1.0, 1000L);
+        LatencyDistribution distribution = new LatencyDistribution();
+        distribution.setType(LatencyDistribution.PERCENTILES);
+        distribution.setPercentiles(percentiles);
+        return distribution;
+    }
+
+    @Test
+    @DisplayName("기록된 백분위 사이의 값은 선형으로 보간한다")
+    void percentilesTest() {
+        LatencyDistribution distribution = percentiles();
+
+        assertEquals(20, distribution.samplePercentiles(0.1));
+        assertEquals(20, distribution.samplePercentiles(0.5));
+        assertEquals(50, distribution.samplePercentiles(0.7));
+        assertEquals(1000, distribution.samplePercentiles(1.0));
+    }
+
+    @Test
+    @DisplayName("균등 분포는 min과 max 사이의 값만 만든다")
+    void uniformTest() {
+        LatencyDistribution distribution = new LatencyDistribution();
+        distribution.setType(LatencyDistribution.UNIFORM);
+        distribution.setMin(10);
+        distribution.setMax(20);
+
+        for (int i = 0; i < 1000; i++) {
+            long sample = distribution.sample();
+            assertTrue(sample >= 10 && sample <= 20);
+        }
+    }
+
+    @Test
+    @DisplayName("오류 확률의 합이 1을 넘는 설정은 거부한다")
+    void validateTest() {
+        RouteProfile profile = new RouteProfile();
+        profile.setErrorRate(0.6);
+        profile.setTimeoutRate(0.6);
+
+        assertThrows(IllegalArgumentException.class, profile::validate);
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.roy.webflux.mvc.controller.simulator;
+
+import com.roy.webflux.util.ManualTimer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteSimulatorTest {
+
+    private static final int CONCURRENCY = 10_000;
+    private static final long LATENCY = 200;
+
+    @Test
+    @DisplayName("응답은 타이머 스레드가 아니라 parallel 스케줄러의 스레드에서 보낸다")
+    void emissionThreadTest() {
+        RemoteSimulator simulator = new RemoteSimulator(LATENCY);
+
+        String thread = simulator.respond("route", "body")
+                .map(body -> Thread.currentThread().getName())
+                .blockLast(Duration.ofSeconds(5));
+
+        assertNotNull(thread);
+        assertTrue(thread.startsWith("parallel-"), thread);
+    }
+
+    @Test
+    @DisplayName("동시에 대기하는 응답이 많아도 모두 예약한 시간 근처에 응답한다")
+    void concurrentDeadlineTest() {
+        RemoteSimulator simulator = new RemoteSimulator(LATENCY);
+
+        List<Long> elapsed = Flux.range(0, CONCURRENCY)
+                .flatMap(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return simulator.respondValue("route", i)
+                            .map(value -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }), CONCURRENCY)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(elapsed);
+        assertEquals(CONCURRENCY, elapsed.size());
+        for (long millis : elapsed) {
+            // HashedWheelTimer는 tick(10ms) 단위로 실행되므로 예약한 시간보다 일찍 응답하지 않는 것과 크게 늦지 않는 것만 확인한다.
+            assertTrue(millis >= LATENCY - 10, "early: " + millis);
+            assertTrue(millis < LATENCY + 500, "late: " + millis);
+        }
+    }
+
+    private final ManualTimer timer = new ManualTimer();
+    private final RemoteSimulator manual = new RemoteSimulator(LATENCY, timer);
+
+    private void program(String route, Consumer<RouteProfile> settings) {
+        RouteProfile profile = RouteProfile.fixed(LATENCY);
+        settings.accept(profile);
+        manual.program(route, profile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats(String route) {
+        return (Map<String, Object>) manual.snapshot().get(route);
+    }
+
+    // 타이머가 끝난 뒤의 처리는 parallel 스케줄러에서 이어지므로 다음 작업이 타이머에 예약될 때까지 기다린 뒤에 시간을 진행시킨다.
+    private void advanceWhenScheduled(long millis) throws InterruptedException {
+        for (int i = 0; i < 1_000 && timer.pending() == 0; i++) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertEquals(1, timer.pending());
+        timer.advance(millis);
+    }
+
+    @Test
+    @DisplayName("errorRate가 1이면 응답 시간이 지난 뒤에 errorStatus로 실패한다")
+    void errorTest() throws Exception {
+        program("route", profile -> {
+            profile.setErrorRate(1);
+            profile.setErrorStatus(503);
+        });
+        CompletableFuture<List<String>> response = manual.respond("route", "body").collectList().toFuture();
+
+        assertFalse(response.isDone());
+        timer.advance(LATENCY);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> response.get(1, TimeUnit.SECONDS));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ResponseStatusException) ex.getCause()).getStatus());
+        assertEquals(1L, stats("route").get("errors"));
+        assertEquals(1L, stats("route").get("requests"));
+    }
+
+    @Test
+    @DisplayName("timeoutRate가 1이면 아무리 기다려도 응답하지 않고 타이머에 작업을 예약하지도 않는다")
+    void timeoutTest() {
+        program("route", profile -> profile.setTimeoutRate(1));
+        CompletableFuture<String> response = manual.respondValue("route", "value").toFuture();
+
+        assertEquals(0, timer.pending());
+        timer.advance(TimeUnit.HOURS.toMillis(1));
+
+        assertFalse(response.isDone());
+        assertEquals(1L, stats("route").get("timeouts"));
+        assertEquals(1L, stats("route").get("inFlight"));
+        response.cancel(true);
+        assertEquals(0L, stats("route").get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("요청이 취소되면 타이머에 예약된 응답도 취소한다")
+    void cancelTest() {
+        Disposable response = manual.respond("route", "body").subscribe();
+
+        assertEquals(1, timer.pending());
+        assertEquals(1L, stats("route").get("inFlight"));
+        response.dispose();
+
+        assertEquals(0, timer.pending());
+        assertEquals(0L, stats("route").get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("느린 본문은 응답 시간이 지난 뒤에 slowBodyChunks개의 조각을 slowBodyChunkDelayMs 간격으로 보낸다")
+    void slowBodyTest() throws Exception {
+        program("route", profile -> {
+            profile.setSlowBodyRate(1);
+            profile.setSlowBodyChunks(5);
+            profile.setSlowBodyChunkDelayMs(50);
+        });
+        CompletableFuture<List<String>> response = manual.respond("route", "0123456789").collectList().toFuture();
+
+        advanceWhenScheduled(LATENCY);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(response.isDone());
+            advanceWhenScheduled(50);
+        }
+
+        assertEquals(Arrays.asList("01", "23", "45", "67", "89"), response.get(1, TimeUnit.SECONDS));
+        assertEquals(1L, stats("route").get("slowBodies"));
+    }
+
+    @Test
+    @DisplayName("respondValue는 느린 본문을 정상 응답으로 처리하고 slowBodies에 세지 않는다")
+    void slowBodyValueTest() throws Exception {
+        program("route", profile -> profile.setSlowBodyRate(1));
+        CompletableFuture<String> response = manual.respondValue("route", "value").toFuture();
+
+        timer.advance(LATENCY);
+
+        assertEquals("value", response.get(1, TimeUnit.SECONDS));
+        assertEquals(0L, stats("route").get("slowBodies"));
+        assertEquals(1L, stats("route").get("requests"));
+    }
+
+    @Test
+    @DisplayName("잘못된 설정은 IllegalArgumentException으로 거절한다")
+    void validateTest() {
+        RouteProfile.fixed(LATENCY).validate();
+
+        List<Consumer<RouteProfile>> invalids = Arrays.asList(
+                profile -> profile.setLatency(null),
+                profile -> profile.setErrorRate(-0.1),
+                profile -> profile.setTimeoutRate(-0.1),
+                profile -> profile.setSlowBodyRate(-0.1),
+                profile -> {
+                    profile.setErrorRate(0.5);
+                    profile.setTimeoutRate(0.3);
+                    profile.setSlowBodyRate(0.3);
+                },
+                profile -> profile.setErrorStatus(200),
+                profile -> profile.setErrorStatus(999),
+                profile -> profile.setSlowBodyChunks(0));
+        for (Consumer<RouteProfile> invalid : invalids) {
+            RouteProfile profile = RouteProfile.fixed(LATENCY);
+            invalid.accept(profile);
+            assertThrows(IllegalArgumentException.class, () -> manual.program("route", profile));
+        }
+        assertTrue(manual.profiles().isEmpty());
+    }
+
+}
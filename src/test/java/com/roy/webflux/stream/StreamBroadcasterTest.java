@@ -0,0 +1,91 @@
+package com.roy.webflux.stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamBroadcasterTest {
+
+    // 제출된 작업을 바로 실행하지 않고 모아두었다가 runAll을 호출하면 실행한다.
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingEmitter extends ResponseBodyEmitter {
+        private final List<Object> received = new ArrayList<>();
+        private boolean broken;
+
+        @Override
+        public void send(Object object) throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+            received.add(object);
+        }
+    }
+
+    private final ManualExecutor writers = new ManualExecutor();
+    private final StreamBroadcaster<String> broadcaster = new StreamBroadcaster<>(writers);
+
+    @Test
+    @DisplayName("등록된 모든 클라이언트에게 같은 값을 보낸다")
+    void publishTest() {
+        RecordingEmitter first = broadcaster.register(new RecordingEmitter());
+        RecordingEmitter second = broadcaster.register(new RecordingEmitter());
+
+        broadcaster.publish("Stream 1");
+        writers.runAll();
+
+        assertEquals(List.of("Stream 1"), first.received);
+        assertEquals(List.of("Stream 1"), second.received);
+    }
+
+    @Test
+    @DisplayName("전송 전에 여러 번 발행되면 가장 최근 값만 보낸다")
+    void coalesceTest() {
+        RecordingEmitter emitter = broadcaster.register(new RecordingEmitter());
+
+        broadcaster.publish("Stream 1");
+        broadcaster.publish("Stream 2");
+        broadcaster.publish("Stream 3");
+        assertEquals(1, writers.tasks.size());
+        writers.runAll();
+
+        assertEquals(List.of("Stream 3"), emitter.received);
+        assertEquals(2L, broadcaster.snapshot().get("coalesced"));
+    }
+
+    @Test
+    @DisplayName("전송에 실패한 클라이언트는 제거된다")
+    void removeBrokenClientTest() {
+        RecordingEmitter healthy = broadcaster.register(new RecordingEmitter());
+        RecordingEmitter broken = broadcaster.register(new RecordingEmitter());
+        broken.broken = true;
+
+        broadcaster.publish("Stream 1");
+        writers.runAll();
+
+        assertEquals(1, broadcaster.size());
+        assertEquals(List.of("Stream 1"), healthy.received);
+        assertEquals(1L, broadcaster.snapshot().get("failed"));
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.roy.webflux.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompletionPipelineTest {
+
+    private static final CompletionPipeline<List<String>, Void> PIPELINE = CompletionPipeline
+            .<List<String>, String>from(context -> done(context.get(0)))
+            .andApply((context, s1) -> done(s1 + "/1"))
+            .andApply((context, s2) -> s2.contains("fail") ? failed(new IllegalStateException(s2)) : done(s2 + "/2"))
+            .andError((context, e) -> context.add("error:" + e.getMessage()))
+            .andAccept((context, result) -> context.add("result:" + result));
+
+    @Test
+    @DisplayName("하나의 템플릿을 여러 요청에서 재사용하고 요청마다 전달한 context로 실행한다")
+    void reuseTest() {
+        List<String> first = newContext("a");
+        List<String> second = newContext("b");
+
+        PIPELINE.run(first);
+        PIPELINE.run(second);
+
+        assertEquals("result:a/1/2", first.get(1));
+        assertEquals("result:b/1/2", second.get(1));
+    }
+
+    @Test
+    @DisplayName("에러가 발생하면 이후의 단계를 건너뛰고 andError로 전달한다")
+    void errorTest() {
+        List<String> context = newContext("fail");
+
+        PIPELINE.run(context);
+
+        assertEquals(2, context.size());
+        assertEquals("error:fail/1", context.get(1));
+    }
+
+    @Test
+    @DisplayName("단계의 함수가 던진 예외도 andError로 전달한다")
+    void thrownTest() {
+        CompletionPipeline<List<String>, Void> pipeline = CompletionPipeline
+                .<List<String>, String>from(context -> {
+                    throw new IllegalArgumentException("thrown");
+                })
+                .andError((context, e) -> context.add("error:" + e.getMessage()))
+                .andAccept((context, result) -> context.add("result:" + result));
+        List<String> context = newContext("a");
+
+        pipeline.run(context);
+
+        assertEquals("error:thrown", context.get(1));
+    }
+
+    @Test
+    @DisplayName("단계를 추가해도 기존 템플릿은 변경되지 않는다")
+    void immutableTest() {
+        CompletionPipeline<List<String>, String> base = CompletionPipeline.from(context -> done(context.get(0)));
+        CompletionPipeline<List<String>, Void> accepted = base.andAccept((context, result) -> context.add("accepted"));
+        List<String> baseContext = newContext("a");
+        List<String> acceptedContext = newContext("a");
+
+        base.run(baseContext);
+        accepted.run(acceptedContext);
+
+        assertEquals(1, baseContext.size());
+        assertEquals("accepted", acceptedContext.get(1));
+    }
+
+    @Test
+    @DisplayName("나중에 완료되는 future도 완료된 스레드에서 다음 단계를 이어서 실행한다")
+    void asyncTest() {
+        SettableListenableFuture<String> later = new SettableListenableFuture<>();
+        CompletionPipeline<List<String>, Void> pipeline = CompletionPipeline
+                .<List<String>, String>from(context -> later)
+                .andApply((context, s1) -> done(s1 + "/1"))
+                .andAccept((context, result) -> context.add("result:" + result));
+        List<String> context = newContext("a");
+
+        pipeline.run(context);
+        assertEquals(1, context.size());
+        later.set("late");
+
+        assertEquals("result:late/1", context.get(1));
+    }
+
+    @Test
+    @DisplayName("동기적으로 완료되는 단계가 만 개 이어져도 StackOverflowError 없이 실행한다")
+    void deepPipelineTest() {
+        CompletionPipeline<List<String>, String> pipeline = CompletionPipeline.from(context -> done(""));
+        for (int i = 0; i < 10_000; i++) {
+            pipeline = pipeline.andApply((context, value) -> done("x"));
+        }
+        List<String> context = newContext("a");
+
+        pipeline.andAccept((ctx, result) -> ctx.add("result:" + result)).run(context);
+
+        assertEquals("result:x", context.get(1));
+    }
+
+    private static List<String> newContext(String request) {
+        List<String> context = new ArrayList<>();
+        context.add(request);
+        return context;
+    }
+
+    private static ListenableFuture<String> done(String value) {
+        SettableListenableFuture<String> future = new SettableListenableFuture<>();
+        future.set(value);
+        return future;
+    }
+
+    private static ListenableFuture<String> failed(Throwable throwable) {
+        SettableListenableFuture<String> future = new SettableListenableFuture<>();
+        future.setException(throwable);
+        return future;
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.roy.webflux.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompletionV5Test {
+
+    private static final int STAGES = 10_000;
+
+    @Test
+    @DisplayName("이미 완료된 future로 시작해도 결과를 다음 단계로 전달한다")
+    void completedSourceTest() {
+        AtomicReference<String> result = new AtomicReference<>();
+
+        CompletionV5
+                .from(done("a"))
+                .andApply(s -> done(s + "/1"))
+                .andAccept(result::set);
+
+        assertEquals("a/1", result.get());
+    }
+
+    @Test
+    @DisplayName("이미 실패한 future의 에러도 andError로 전달한다")
+    void completedErrorTest() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicReference<String> result = new AtomicReference<>();
+        SettableListenableFuture<String> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("failed"));
+
+        CompletionV5
+                .from(failed)
+                .andApply(s -> done(s + "/1"))
+                .andError(error::set)
+                .andAccept(result::set);
+
+        assertEquals("failed", error.get().getMessage());
+        assertNull(result.get());
+    }
+
+    @Test
+    @DisplayName("동기적으로 완료되는 단계가 만 개 이어져도 StackOverflowError 없이 실행한다")
+    void deepChainTest() {
+        SettableListenableFuture<Integer> source = new SettableListenableFuture<>();
+        AtomicReference<Integer> result = new AtomicReference<>();
+
+        CompletionV5<?, Integer> chain = CompletionV5.from(source);
+        for (int i = 0; i < STAGES; i++) {
+            chain = chain.andApply(value -> done(value + 1));
+        }
+        chain.andAccept(result::set);
+        source.set(0);
+
+        assertEquals(STAGES, result.get().intValue());
+    }
+
+    @Test
+    @DisplayName("andPublishOn 이후의 단계는 지정한 executor의 스레드에서 실행하고 스레드를 옮긴 횟수를 기록한다")
+    void publishOnTest() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "offload"));
+        CompletionStats stats = new CompletionStats(thread -> false);
+        AtomicReference<String> ranOn = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        CompletionV5
+                .from(done("a"), stats)
+                .andApply(s -> done(s + "/1"))
+                .andPublishOn(executor)
+                .andApply(s -> done(s + "/2"))
+                .andAccept(s -> {
+                    ranOn.set(Thread.currentThread().getName() + ":" + s);
+                    latch.countDown();
+                });
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals("offload:a/1/2", ranOn.get());
+        Map<String, Object> snapshot = stats.snapshot();
+        assertEquals(0L, stage(snapshot, "1:apply").get("hops"));
+        assertEquals(1L, stage(snapshot, "3:apply").get("hops"));
+        assertEquals(0L, stage(snapshot, "4:accept").get("hops"));
+    }
+
+    @Test
+    @DisplayName("andApplyAsync의 계산은 executor에서 실행하고 이벤트 루프 스레드에서 실행된 단계만 이벤트 루프 시간으로 기록한다")
+    void applyAsyncTest() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "offload"));
+        CompletionStats stats = new CompletionStats(thread -> thread.getName().startsWith("event-loop"));
+        SettableListenableFuture<String> source = new SettableListenableFuture<>();
+        AtomicReference<String> computedOn = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        CompletionV5
+                .from(source, stats)
+                .andApplyAsync(s -> {
+                    computedOn.set(Thread.currentThread().getName());
+                    return s + "/computed";
+                }, executor)
+                .andAccept(s -> latch.countDown());
+        Thread eventLoop = new Thread(() -> source.set("a"), "event-loop-1");
+        eventLoop.start();
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        // 1단계의 기록은 event-loop-1 스레드에서 execute의 finally에 남기 때문에 latch가 풀린 뒤에도 아직 기록되지 않았을 수 있다.
+        // 2단계의 기록도 offload 스레드에서 남기므로 두 스레드가 모두 끝난 뒤에 snapshot을 확인한다.
+        eventLoop.join();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertEquals("offload", computedOn.get());
+        Map<String, Object> snapshot = stats.snapshot();
+        assertEquals(1L, stage(snapshot, "1:applyAsync").get("eventLoopRuns"));
+        assertEquals(0L, stage(snapshot, "2:accept").get("eventLoopRuns"));
+    }
+
+    @Test
+    @DisplayName("단계의 future가 timeout 안에 완료되지 않으면 future를 취소하고 TimeoutException을 전달한다")
+    void stageTimeoutTest() throws InterruptedException {
+        SettableListenableFuture<String> hanging = new SettableListenableFuture<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean accepted = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        CompletionV5
+                .from(done("a"))
+                .andApply(s -> hanging)
+                .timeout(50)
+                .andError(e -> {
+                    error.set(e);
+                    latch.countDown();
+                })
+                .andAccept(s -> accepted.set(true));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof TimeoutException);
+        assertTrue(hanging.isCancelled());
+        assertFalse(accepted.get());
+    }
+
+    @Test
+    @DisplayName("체인 전체가 chainTimeout 안에 끝나지 않으면 진행 중인 future를 취소하고 이후의 단계는 실행하지 않는다")
+    void chainTimeoutTest() throws InterruptedException {
+        SettableListenableFuture<String> hanging = new SettableListenableFuture<>();
+        AtomicBoolean applied = new AtomicBoolean();
+        AtomicBoolean accepted = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        CompletionV5
+                .from(hanging)
+                .chainTimeout(50)
+                .andApply(s -> {
+                    applied.set(true);
+                    return done(s);
+                })
+                .andError(e -> {
+                    error.set(e);
+                    latch.countDown();
+                })
+                .andAccept(s -> accepted.set(true));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof TimeoutException);
+        assertTrue(hanging.isCancelled());
+        assertFalse(applied.get());
+        assertFalse(accepted.get());
+    }
+
+    @Test
+    @DisplayName("cancel을 호출하면 진행 중인 future를 취소하고, 이미 끝난 체인에서는 아무것도 하지 않는다")
+    void cancelTest() {
+        SettableListenableFuture<String> inFlight = new SettableListenableFuture<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean accepted = new AtomicBoolean();
+
+        CompletionV5<String, Void> cancelled = CompletionV5
+                .from(done("a"))
+                .andApply(s -> inFlight)
+                .andError(error::set)
+                .andAccept(s -> accepted.set(true));
+        cancelled.cancel();
+
+        assertTrue(inFlight.isCancelled());
+        assertTrue(error.get() instanceof CancellationException);
+        assertFalse(accepted.get());
+
+        SettableListenableFuture<String> completed = new SettableListenableFuture<>();
+        AtomicReference<String> result = new AtomicReference<>();
+        CompletionV5<String, Void> finished = CompletionV5
+                .from(done("a"))
+                .andApply(s -> completed)
+                .andAccept(result::set);
+        completed.set("b");
+        finished.cancel();
+
+        assertEquals("b", result.get());
+        assertFalse(completed.isCancelled());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stage(Map<String, Object> snapshot, String stage) {
+        return (Map<String, Object>) snapshot.get(stage);
+    }
+
+    private static <T> ListenableFuture<T> done(T value) {
+        SettableListenableFuture<T> future = new SettableListenableFuture<>();
+        future.set(value);
+        return future;
+    }
+
+}
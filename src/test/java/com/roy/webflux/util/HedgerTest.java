@@ -0,0 +1,201 @@
+package com.roy.webflux.util;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HedgerTest {
+
+    private final List<SettableListenableFuture<String>> calls = new CopyOnWriteArrayList<>();
+    private final ManualTimer timer = new ManualTimer();
+    private final AtomicLong clock = new AtomicLong();
+
+    private ListenableFuture<String> call() {
+        SettableListenableFuture<String> future = new SettableListenableFuture<>();
+        calls.add(future);
+        return future;
+    }
+
+    private Hedger hedger(double percentile, double budget, long minDelayMillis) {
+        return new Hedger(percentile, budget, minDelayMillis, 0, timer, clock::get);
+    }
+
+    private void sleep(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        timer.advance(millis);
+    }
+
+    @Test
+    @DisplayName("delay 안에 응답하지 않으면 hedge를 보내고 먼저 성공한 응답을 사용한 뒤 나머지는 취소한다")
+    void hedgeWinsTest() throws Exception {
+        Hedger hedger = hedger(0.95, 1.0, 20);
+        ListenableFuture<String> result = hedger.call(this::call);
+
+        sleep(19);
+        assertEquals(1, calls.size());
+        sleep(1);
+        assertEquals(2, calls.size());
+        calls.get(1).set("remote-service-1: hedge");
+
+        assertEquals("remote-service-1: hedge", result.get());
+        assertTrue(calls.get(0).isCancelled());
+        assertEquals(1L, hedger.snapshot().get("hedgeWins"));
+    }
+
+    @Test
+    @DisplayName("delay 안에 응답하면 hedge를 보내지 않고 예약된 hedge도 취소한다")
+    void primaryWinsTest() throws Exception {
+        Hedger hedger = hedger(0.95, 1.0, 20);
+        ListenableFuture<String> result = hedger.call(this::call);
+
+        sleep(10);
+        calls.get(0).set("remote-service-1: primary");
+
+        assertEquals("remote-service-1: primary", result.get());
+        assertEquals(0, timer.pending());
+        sleep(20);
+        assertEquals(1, calls.size());
+        assertEquals(0L, hedger.snapshot().get("hedged"));
+    }
+
+    @Test
+    @DisplayName("budget을 넘어서면 hedge를 보내지 않는다")
+    void budgetTest() throws Exception {
+        Hedger hedger = hedger(0.95, 0.0, 20);
+        ListenableFuture<String> result = hedger.call(this::call);
+
+        sleep(20);
+        assertEquals(1, calls.size());
+        calls.get(0).set("remote-service-1: primary");
+
+        assertEquals("remote-service-1: primary", result.get());
+        assertEquals(0L, hedger.snapshot().get("hedged"));
+        assertEquals(1L, hedger.snapshot().get("budgetExhausted"));
+    }
+
+    @Test
+    @DisplayName("여러 스레드에서 동시에 hedge하더라도 hedge의 수는 budget 비율을 넘지 않는다")
+    void concurrentBudgetTest() throws Exception {
+        int numberOfThreads = 8;
+        int requests = 16;
+        ExecutorService es = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                // 예약된 hedge를 모아두었다가 여러 스레드에서 한꺼번에 실행한다.
+                List<Runnable> hedges = new CopyOnWriteArrayList<>();
+                Timer capturing = new Timer() {
+                    @Override
+                    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+                        Timeout timeout = timer.newTimeout(task, delay, unit);
+                        hedges.add(() -> {
+                            try {
+                                task.run(timeout);
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                            }
+                        });
+                        return timeout;
+                    }
+
+                    @Override
+                    public Set<Timeout> stop() {
+                        return timer.stop();
+                    }
+                };
+                Hedger hedger = new Hedger(0.95, 0.5, 1, 0, capturing, clock::get);
+                for (int i = 0; i < requests; i++) {
+                    hedger.call(SettableListenableFuture::new);
+                }
+
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(hedges.size());
+                for (Runnable hedge : hedges) {
+                    es.execute(() -> {
+                        try {
+                            start.await();
+                            hedge.run();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                start.countDown();
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+
+                assertEquals(requests / 2L, hedger.snapshot().get("hedged"));
+                assertEquals(requests / 2L, hedger.snapshot().get("budgetExhausted"));
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("hedge를 보낸 경우에는 두 호출이 모두 실패해야 실패한다")
+    void bothFailTest() throws Exception {
+        Hedger hedger = hedger(0.95, 1.0, 20);
+        ListenableFuture<String> result = hedger.call(this::call);
+
+        sleep(20);
+        assertEquals(2, calls.size());
+        calls.get(0).setException(new IllegalStateException("primary"));
+        assertFalse(result.isDone());
+        calls.get(1).setException(new IllegalStateException("hedge"));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, result::get);
+        assertEquals("hedge", ex.getCause().getMessage());
+    }
+
+    @Test
+    @DisplayName("hedge를 보내기 전에 실패하면 바로 실패한다")
+    void failBeforeHedgeTest() {
+        Hedger hedger = hedger(0.95, 1.0, 1_000);
+        ListenableFuture<String> result = hedger.call(this::call);
+
+        calls.get(0).setException(new IllegalStateException("primary"));
+
+        assertThrows(ExecutionException.class, result::get);
+        assertEquals(0, timer.pending());
+        assertEquals(0L, hedger.snapshot().get("hedged"));
+    }
+
+    @Test
+    @DisplayName("hedge가 계속 이기더라도 취소된 첫 번째 호출을 기다린 시간을 기록하므로 delay가 줄어들지 않는다")
+    void hedgeWinsKeepDelayTest() throws Exception {
+        Hedger hedger = hedger(0.5, 1.0, 1);
+
+        for (int i = 0; i < 10; i++) {
+            ListenableFuture<String> result = hedger.call(this::call);
+            sleep(30);
+            calls.get(i * 2 + 1).set("remote-service-1: hedge");
+
+            assertEquals("remote-service-1: hedge", result.get());
+            assertTrue(calls.get(i * 2).isCancelled());
+        }
+        assertEquals(10L, hedger.snapshot().get("hedgeWins"));
+
+        // delay는 1초에 한 번만 다시 계산하므로 시계를 1초 진행시킨 뒤에 확인한다.
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        long delay = hedger.delay();
+        assertTrue(delay >= 30, "delay: " + delay);
+    }
+
+}
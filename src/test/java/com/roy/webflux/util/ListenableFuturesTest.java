@@ -0,0 +1,126 @@
+package com.roy.webflux.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import reactor.util.function.Tuple2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListenableFuturesTest {
+
+    @Test
+    @DisplayName("zip은 두 결과가 모두 도착하면 Tuple2로 완료한다")
+    void zipTest() throws Exception {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<Integer> second = new SettableListenableFuture<>();
+
+        ListenableFuture<Tuple2<String, Integer>> zipped = ListenableFutures.zip(first, second);
+        second.set(2);
+        assertFalse(zipped.isDone());
+        first.set("a");
+
+        Tuple2<String, Integer> result = zipped.get(1, TimeUnit.SECONDS);
+        assertEquals("a", result.getT1());
+        assertEquals(2, result.getT2().intValue());
+    }
+
+    @Test
+    @DisplayName("allOf는 완료된 순서와 관계없이 입력한 순서대로 결과를 모은다")
+    void allOfTest() throws Exception {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+        SettableListenableFuture<String> third = new SettableListenableFuture<>();
+
+        ListenableFuture<List<String>> all = ListenableFutures.allOf(Arrays.asList(first, second, third));
+        third.set("c");
+        first.set("a");
+        second.set("b");
+
+        assertEquals(Arrays.asList("a", "b", "c"), all.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("allOf는 하나라도 실패하면 바로 실패하고 나머지 future를 취소한다")
+    void allOfFailureTest() throws InterruptedException {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+
+        ListenableFuture<List<String>> all = ListenableFutures.allOf(Arrays.asList(first, second));
+        first.setException(new IllegalStateException("failed"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> all.get(1, TimeUnit.SECONDS));
+        assertEquals("failed", e.getCause().getMessage());
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    @DisplayName("firstSuccess는 실패를 건너뛰고 가장 먼저 성공한 결과를 사용한다")
+    void firstSuccessTest() throws Exception {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+        SettableListenableFuture<String> third = new SettableListenableFuture<>();
+
+        ListenableFuture<String> any = ListenableFutures.firstSuccess(Arrays.asList(first, second, third));
+        first.setException(new IllegalStateException("failed"));
+        second.set("b");
+
+        assertEquals("b", any.get(1, TimeUnit.SECONDS));
+        assertTrue(third.isCancelled());
+    }
+
+    @Test
+    @DisplayName("firstSuccess는 모두 실패한 경우에만 첫 번째 에러를 cause로 가지는 새로운 예외로 실패한다")
+    void firstSuccessFailureTest() {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+        IllegalStateException firstError = new IllegalStateException("first");
+        IllegalStateException secondError = new IllegalStateException("second");
+
+        ListenableFuture<String> any = ListenableFutures.firstSuccess(Arrays.asList(first, second));
+        first.setException(firstError);
+        assertFalse(any.isDone());
+        second.setException(secondError);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> any.get(1, TimeUnit.SECONDS));
+        assertSame(firstError, e.getCause().getCause());
+        assertSame(secondError, e.getCause().getSuppressed()[0]);
+        assertEquals(0, firstError.getSuppressed().length);
+    }
+
+    @Test
+    @DisplayName("firstSuccess는 같은 예외 인스턴스로 실패한 입력이 여러 개여도 완료하고 입력의 예외를 변경하지 않는다")
+    void firstSuccessSharedFailureTest() {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+        IllegalStateException shared = new IllegalStateException("shared");
+
+        ListenableFuture<String> any = ListenableFutures.firstSuccess(Arrays.asList(first, second));
+        first.setException(shared);
+        second.setException(shared);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> any.get(1, TimeUnit.SECONDS));
+        assertSame(shared, e.getCause().getCause());
+        assertEquals(0, e.getCause().getSuppressed().length);
+        assertEquals(0, shared.getSuppressed().length);
+    }
+
+    @Test
+    @DisplayName("결과 future를 취소하면 입력 future도 취소한다")
+    void cancelTest() {
+        SettableListenableFuture<String> first = new SettableListenableFuture<>();
+        SettableListenableFuture<String> second = new SettableListenableFuture<>();
+
+        ListenableFutures.zip(first, second).cancel(true);
+
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+
+}
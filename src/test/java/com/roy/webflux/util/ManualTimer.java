@@ -0,0 +1,111 @@
+package com.roy.webflux.util;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// 테스트에서 시간을 직접 진행시키는 타이머다.
+// advance를 호출한 스레드에서 예약 시간이 지난 작업을 예약한 순서대로 실행하므로 실제 시간이나 HashedWheelTimer의 tick에 의존하지 않는다.
+public class ManualTimer implements Timer {
+    private final List<ManualTimeout> timeouts = new ArrayList<>();
+    private long now;
+
+    @Override
+    public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        ManualTimeout timeout = new ManualTimeout(task, now + unit.toMillis(delay));
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    public void advance(long millis) {
+        List<ManualTimeout> expired = new ArrayList<>();
+        synchronized (this) {
+            now += millis;
+            for (Iterator<ManualTimeout> it = timeouts.iterator(); it.hasNext(); ) {
+                ManualTimeout timeout = it.next();
+                if (timeout.cancelled) {
+                    it.remove();
+                } else if (timeout.deadline <= now) {
+                    it.remove();
+                    expired.add(timeout);
+                }
+            }
+        }
+        for (ManualTimeout timeout : expired) {
+            timeout.expire();
+        }
+    }
+
+    public synchronized int pending() {
+        int pending = 0;
+        for (ManualTimeout timeout : timeouts) {
+            if (!timeout.cancelled) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public synchronized Set<Timeout> stop() {
+        timeouts.clear();
+        return Collections.emptySet();
+    }
+
+    private final class ManualTimeout implements Timeout {
+        private final TimerTask task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        private ManualTimeout(TimerTask task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        private void expire() {
+            expired = true;
+            try {
+                task.run(this);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Timer timer() {
+            return ManualTimer.this;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (expired) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.roy.webflux.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicroBatchTriggerTest {
+
+    private final AtomicInteger flushes = new AtomicInteger();
+    private final ManualTimer timer = new ManualTimer();
+
+    @Test
+    @DisplayName("maxSize만큼 쌓이면 flush하고 카운터를 초기화한다")
+    void sizeTriggerTest() {
+        MicroBatchTrigger trigger = new MicroBatchTrigger(100, 60_000, flushes::incrementAndGet);
+        for (int i = 0; i < 250; i++) {
+            trigger.arrived();
+        }
+
+        assertEquals(2, flushes.get());
+        assertEquals(50, trigger.pending());
+    }
+
+    @Test
+    @DisplayName("첫 요청이 maxWaitMillis만큼 기다리면 flush한다")
+    void timeTriggerTest() {
+        MicroBatchTrigger trigger = new MicroBatchTrigger(100, 50, timer, flushes::incrementAndGet);
+        trigger.arrived();
+        trigger.arrived();
+
+        timer.advance(49);
+        assertEquals(0, flushes.get());
+        timer.advance(1);
+
+        assertEquals(1, flushes.get());
+        assertEquals(0, trigger.pending());
+    }
+
+    @Test
+    @DisplayName("크기로 flush된 배치의 타이머는 다음 배치를 flush하지 않는다")
+    void staleTimerTest() {
+        MicroBatchTrigger trigger = new MicroBatchTrigger(2, 50, timer, flushes::incrementAndGet);
+        trigger.arrived();
+        trigger.arrived();
+        timer.advance(30);
+        trigger.arrived();
+        timer.advance(30);
+
+        assertEquals(1, flushes.get());
+        assertEquals(1, trigger.pending());
+
+        timer.advance(20);
+
+        assertEquals(2, flushes.get());
+        assertEquals(0, trigger.pending());
+    }
+
+    @Test
+    @DisplayName("reset하면 카운터를 초기화하고 진행 중이던 배치의 타이머는 flush하지 않는다")
+    void resetTest() {
+        MicroBatchTrigger trigger = new MicroBatchTrigger(5, 50, timer, flushes::incrementAndGet);
+        trigger.arrived();
+        trigger.arrived();
+        trigger.arrived();
+
+        trigger.reset();
+        assertEquals(0, trigger.pending());
+        timer.advance(50);
+        assertEquals(0, flushes.get());
+
+        for (int i = 0; i < 4; i++) {
+            trigger.arrived();
+        }
+        assertEquals(0, flushes.get());
+        trigger.arrived();
+        assertEquals(1, flushes.get());
+        assertEquals(0, trigger.pending());
+    }
+
+    @Test
+    @DisplayName("동시에 도착해도 요청은 정확히 한 번씩만 집계된다")
+    void concurrentArrivalTest() throws InterruptedException {
+        MicroBatchTrigger trigger = new MicroBatchTrigger(10, 60_000, flushes::incrementAndGet);
+        int numberOfThreads = 100;
+        ExecutorService es = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            es.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    trigger.arrived();
+                }
+                latch.countDown();
+            });
+        }
+        latch.await(10, TimeUnit.SECONDS);
+        es.shutdown();
+
+        assertEquals(10_000, flushes.get());
+        assertEquals(0, trigger.pending());
+    }
+
+}
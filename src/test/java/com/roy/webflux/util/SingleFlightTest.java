@@ -0,0 +1,95 @@
+package com.roy.webflux.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    @DisplayName("같은 키로 동시에 호출하면 한 번만 실행하고 결과를 함께 받는다")
+    void collapseTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SettableListenableFuture<String> upstream = new SettableListenableFuture<>();
+
+        ListenableFuture<String> first = singleFlight.execute("1", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        ListenableFuture<String> second = singleFlight.execute("1", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        assertEquals(1, singleFlight.inFlight());
+
+        upstream.set("remote-service-1: 1");
+
+        assertEquals(1, calls.get());
+        assertEquals("remote-service-1: 1", first.get());
+        assertEquals("remote-service-1: 1", second.get());
+        assertEquals(0, singleFlight.inFlight());
+        assertEquals(1L, singleFlight.snapshot().get("collapsed"));
+    }
+
+    @Test
+    @DisplayName("완료된 뒤에 들어온 호출은 새로 실행한다")
+    void executeAfterCompletionTest() {
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            singleFlight.execute("1", () -> {
+                calls.incrementAndGet();
+                SettableListenableFuture<String> upstream = new SettableListenableFuture<>();
+                upstream.set("remote-service-1: 1");
+                return upstream;
+            });
+        }
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    @DisplayName("실패한 결과는 기다리던 모든 호출자에게 전달되고 한 호출자의 취소는 다른 호출자에게 영향을 주지 않는다")
+    void failureAndCancelTest() {
+        SettableListenableFuture<String> upstream = new SettableListenableFuture<>();
+        ListenableFuture<String> first = singleFlight.execute("1", () -> upstream);
+        ListenableFuture<String> second = singleFlight.execute("1", () -> upstream);
+        ListenableFuture<String> third = singleFlight.execute("1", () -> upstream);
+
+        first.cancel(true);
+        upstream.setException(new IllegalStateException("Remote error"));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, second::get);
+        assertEquals("Remote error", ex.getCause().getMessage());
+        assertThrows(ExecutionException.class, third::get);
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    @DisplayName("합류한 모든 호출자가 취소하면 실행 중인 호출을 취소하고 이후의 호출은 새로 실행한다")
+    void cancelAllTest() {
+        SettableListenableFuture<String> upstream = new SettableListenableFuture<>();
+        ListenableFuture<String> first = singleFlight.execute("1", () -> upstream);
+        ListenableFuture<String> second = singleFlight.execute("1", () -> upstream);
+
+        first.cancel(true);
+        assertFalse(upstream.isCancelled());
+        second.cancel(true);
+        assertTrue(upstream.isCancelled());
+        assertEquals(0, singleFlight.inFlight());
+
+        SettableListenableFuture<String> retried = new SettableListenableFuture<>();
+        ListenableFuture<String> third = singleFlight.execute("1", () -> retried);
+        assertFalse(third.isDone());
+        assertEquals(2L, singleFlight.snapshot().get("executions"));
+    }
+
+}